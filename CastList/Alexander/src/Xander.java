@@ -1,14 +1,13 @@
 import jason.playbill.actor.Actor;
+import jason.playbill.actor.CastManifest;
 
-import static jason.playbill.ConsoleColors.*;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 
 public class Xander {
-    public static void main(String[] args) throws InterruptedException {
-        Object sync = new Object();
-        Actor Xander = new Actor("Xander", ANSI_RED, 4001, sync);
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized (sync) {
-            sync.wait();
-        }
+    public static void main(String[] args) throws InterruptedException, IOException {
+        CountDownLatch leaving = new CountDownLatch(1);
+        Actor Xander = new Actor(CastManifest.load(), "Xander", leaving);
+        leaving.await();
     }
 }
@@ -1,9 +1,11 @@
 import jason.playbill.actor.Actor;
+import jason.playbill.actor.CastManifest;
 
-import static jason.playbill.ConsoleColors.*;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 
 public class Lexa {
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) throws InterruptedException, IOException {
         /*try {todo: get registry access working. move it to actor or playscript, not sure which yet
             ImplExample obj = new ImplExample();
 
@@ -23,12 +25,9 @@ public class Lexa {
             System.out.println(key + " " + env.get(key));
         }*/
 
-        Object sync = new Object();
-        Actor Lexa = new Actor("Lexa", ANSI_CYAN, 4000, sync);
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized (sync) {
-            sync.wait();
-        }
+        CountDownLatch leaving = new CountDownLatch(1);
+        Actor Lexa = new Actor(CastManifest.load(), "Lexa", leaving);
+        leaving.await();
 
         //todo: move startup animation to actor
         /*System.out.print('/');
@@ -1,14 +1,14 @@
-import static jason.playbill.ConsoleColors.*;
 import jason.playbill.actor.Actor;
+import jason.playbill.actor.CastManifest;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 
 public class CallMeKey {
 
-    public static void main(String[] args) throws InterruptedException {
-        Object sync = new Object();
-        Actor CallMeKey = new Actor("CallMeKey", ANSI_BRIGHT_BLACK, 4002, sync);
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized (sync) {
-            sync.wait();
-        }
+    public static void main(String[] args) throws InterruptedException, IOException {
+        CountDownLatch leaving = new CountDownLatch(1);
+        Actor CallMeKey = new Actor(CastManifest.load(), "CallMeKey", leaving);
+        leaving.await();
     }
 }
@@ -1,16 +1,14 @@
 import jason.playbill.actor.Actor;
+import jason.playbill.actor.CastManifest;
 
-import static jason.playbill.ConsoleColors.*;
-import static jason.playbill.ConsoleColors.ANSI_BRIGHT_BLACK;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 
 public class Fate {
 
-    public static void main(String[] args) throws InterruptedException {
-        Object sync = new Object();
-        Actor Fate = new Actor("Fate", ANSI_BRIGHT_YELLOW, 4003, sync);
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized (sync) {
-            sync.wait();
-        }
+    public static void main(String[] args) throws InterruptedException, IOException {
+        CountDownLatch leaving = new CountDownLatch(1);
+        Actor Fate = new Actor(CastManifest.load(), "Fate", leaving);
+        leaving.await();
     }
 }
@@ -0,0 +1,129 @@
+package jason.playbill.actor;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.embedded.EmbeddedChannel;
+import jason.playbill.playscript.LineRef;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Benchmarks how many bytes the send path allocates per line, once it's warmed up.
+ *
+ * Lines are sent from a cached self-contact, as an actor sends them, both as text and as {@link LineRef}s, and
+ * each case is measured three ways:
+ * <ul>
+ *     <li>encode: a pooled message written straight into a reused buffer by {@link MessageCodec};</li>
+ *     <li>send: the same message written through a binary pipeline, and the frame it produces released;</li>
+ *     <li>round trip: the frame also decoded by a second pipeline, and the received message recycled.</li>
+ * </ul>
+ * The pipelines are embedded channels, which run everything on the calling thread, so the thread's allocation
+ * counter sees all of it. Decoding text has to make a string per line, so the round trip can't get to zero for
+ * text. {@code playbill.bench.lines} lines (default 1,000,000) are measured per case, after as many again to warm
+ * up. Needs a JVM whose thread bean can count allocations, as HotSpot's can.
+ */
+public class AllocationBench {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        int lines = Integer.getInteger("playbill.bench.lines", 1_000_000);
+        Contact self = new Contact();
+        self.name = "Xander";
+        self.color = "\u001B[31m";
+        self.host = "localhost";
+        self.port = 4001;
+        String text = "dude lex have you no chill";
+        // An actor makes a new reference per line it speaks; that's left out, so this measures the send path.
+        LineRef ref = new LineRef("scene1", "cue2", 1);
+
+        System.out.printf("%-12s %-8s %14s%n", "path", "line", "bytes/line");
+        for (Object data : new Object[] {text, ref}) {
+            String kind = data instanceof LineRef ? "ref" : "text";
+            System.out.printf("%-12s %-8s %14.2f%n", "encode", kind,
+                    perLine(lines, () -> encode(self, data, lines)));
+            System.out.printf("%-12s %-8s %14.2f%n", "send", kind,
+                    perLine(lines, () -> send(self, data, lines, false)));
+            System.out.printf("%-12s %-8s %14.2f%n", "round trip", kind,
+                    perLine(lines, () -> send(self, data, lines, true)));
+        }
+    }
+
+    /**
+     * Warms a case up, then measures it.
+     *
+     * @param lines how many lines the case sends
+     * @param run   the case
+     * @return bytes allocated per line on the measured run
+     */
+    private static double perLine(int lines, Runnable run) {
+        run.run();
+        long thread = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(thread);
+        run.run();
+        return (THREADS.getThreadAllocatedBytes(thread) - before) / (double) lines;
+    }
+
+    /**
+     * Encodes lines into one reused buffer.
+     *
+     * @param self  the sender
+     * @param data  the line's text or reference
+     * @param lines how many to encode
+     */
+    private static void encode(Contact self, Object data, int lines) {
+        ContactTable contacts = ContactTable.introduced(self);
+        ByteBuf out = Unpooled.directBuffer(256);
+        for (int i = 0; i < lines; i++) {
+            Message message = Message.pooled(self, Message.MessageType.dm, data);
+            MessageCodec.write(message, out, contacts);
+            message.recycle();
+            out.clear();
+        }
+        out.release();
+    }
+
+    /**
+     * Sends lines through a binary pipeline, and optionally decodes them at the other end.
+     *
+     * @param self    the sender
+     * @param data    the line's text or reference
+     * @param lines   how many to send
+     * @param receive whether to decode them too
+     */
+    private static void send(Contact self, Object data, int lines, boolean receive) {
+        EmbeddedChannel out = channel();
+        EmbeddedChannel in = channel();
+        ContactTable.of(out).setSelf(self);
+
+        for (int i = 0; i < lines; i++) {
+            out.writeAndFlush(Message.pooled(self, Message.MessageType.dm, data), out.voidPromise());
+            ByteBuf frame = out.readOutbound();
+            if (!receive) {
+                frame.release();
+                continue;
+            }
+            in.writeInbound(frame);
+            Message received = in.readInbound();
+            received.recycle();
+        }
+
+        out.finishAndReleaseAll();
+        in.finishAndReleaseAll();
+    }
+
+    private static EmbeddedChannel channel() {
+        return new EmbeddedChannel(new ChannelInitializer<EmbeddedChannel>() {
+            @Override
+            protected void initChannel(EmbeddedChannel ch) {
+                WireFormat.binary.install(ch.pipeline());
+            }
+        });
+    }
+}
@@ -0,0 +1,151 @@
+package jason.playbill.actor;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks the wire formats on the two kinds of traffic an ensemble sends most: direct messages, and the
+ * roll-calls that carry a script hash and a gossip snapshot.
+ *
+ * Each message goes through a pair of embedded channels, one encoding and one decoding, so the figures cover
+ * the whole trip through the pipeline but nothing of the network. Bytes per message are what the encoder puts
+ * on the wire, length field included. Direct messages are measured in steady state, after the sender has been
+ * introduced over the channel. Roll-calls are measured as the first frame on a fresh channel, as they are in a
+ * real ensemble. Every {@link WireFormat} is run, so the old Java serialization is there to compare against.
+ * {@code playbill.bench.messages} sets how many direct messages are timed per format (default 200,000), and a
+ * tenth as many roll-calls are.
+ */
+public class CodecBench {
+    /**
+     * Runs the benchmark.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        int messages = Integer.getInteger("playbill.bench.messages", 200_000);
+        Contact source = contact("Xander", "localhost", 4001);
+        List<Member> gossip = new ArrayList<>();
+        gossip.add(new Member("Lexa", "\u001B[36m", "localhost", 4000, 0, Member.State.alive));
+        gossip.add(new Member("Xander", "\u001B[31m", "localhost", 4001, 0, Member.State.alive));
+        gossip.add(new Member("CallMeKey", "\u001B[90m", "localhost", 4002, 1, Member.State.suspect));
+        gossip.add(new Member("Fate", "\u001B[93m", "localhost", 4003, 0, Member.State.alive));
+        String hash = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+        System.out.printf("%-11s %-10s %10s %14s%n", "format", "message", "bytes", "messages/s");
+        for (WireFormat format : WireFormat.values()) {
+            for (int warmup = 0; warmup < 3; warmup++) {
+                dm(format, source, messages / 4);
+                rollcall(format, source, hash, gossip, messages / 40);
+            }
+            long[] dm = dm(format, source, messages);
+            long[] rollcall = rollcall(format, source, hash, gossip, messages / 10);
+            System.out.printf("%-11s %-10s %10d %,14d%n", format, "dm", dm[0], dm[1]);
+            System.out.printf("%-11s %-10s %10d %,14d%n", format, "rollcall", rollcall[0], rollcall[1]);
+        }
+    }
+
+    /**
+     * Sends direct messages over one pair of channels.
+     *
+     * @param format   the wire format
+     * @param source   the sender
+     * @param messages how many to send
+     * @return the bytes the last message took on the wire, and messages per second
+     */
+    private static long[] dm(WireFormat format, Contact source, int messages) {
+        EmbeddedChannel out = channel(format);
+        EmbeddedChannel in = channel(format);
+        // The first frame introduces the sender, and isn't what steady traffic looks like.
+        trip(out, in, Message.pooled(source, Message.MessageType.dm, "Introductions."));
+
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            Message message = Message.pooled(source, Message.MessageType.dm, "dude lex have you no chill");
+            message.setCorrelationId(i + 1);
+            bytes = trip(out, in, message);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        out.finishAndReleaseAll();
+        in.finishAndReleaseAll();
+        return new long[] {bytes, messages * 1_000_000_000L / elapsed};
+    }
+
+    /**
+     * Sends roll-calls, each as the first frame over a fresh pair of channels.
+     *
+     * @param format   the wire format
+     * @param source   the sender
+     * @param hash     the script hash the roll-call carries
+     * @param gossip   the gossip snapshot the roll-call carries
+     * @param messages how many to send
+     * @return the bytes the last roll-call took on the wire, and roll-calls per second
+     */
+    private static long[] rollcall(WireFormat format, Contact source, String hash, List<Member> gossip, int messages) {
+        long bytes = 0;
+        long elapsed = 0;
+        for (int i = 0; i < messages; i++) {
+            EmbeddedChannel out = channel(format);
+            EmbeddedChannel in = channel(format);
+            Message message = Message.pooled(source, Message.MessageType.rollcall, hash);
+            message.setGossip(gossip);
+
+            long start = System.nanoTime();
+            bytes = trip(out, in, message);
+            elapsed += System.nanoTime() - start;
+
+            out.finishAndReleaseAll();
+            in.finishAndReleaseAll();
+        }
+        return new long[] {bytes, messages * 1_000_000_000L / elapsed};
+    }
+
+    /**
+     * Encodes a message on one channel and decodes it on the other.
+     *
+     * @param out     the sending channel
+     * @param in      the receiving channel
+     * @param message the message
+     * @return how many bytes it took on the wire
+     */
+    private static long trip(EmbeddedChannel out, EmbeddedChannel in, Message message) {
+        out.writeOutbound(message);
+        long bytes = 0;
+        ByteBuf frame;
+        while ((frame = out.readOutbound()) != null) {
+            bytes += frame.readableBytes();
+            in.writeInbound(frame);
+        }
+
+        Message received = in.readInbound();
+        if (received == null || received.getMessageType() != Message.MessageType.dm
+                && received.getMessageType() != Message.MessageType.rollcall) {
+            throw new IllegalStateException("The message didn't make it through.");
+        }
+        received.recycle();
+        return bytes;
+    }
+
+    private static EmbeddedChannel channel(WireFormat format) {
+        return new EmbeddedChannel(new ChannelInitializer<EmbeddedChannel>() {
+            @Override
+            protected void initChannel(EmbeddedChannel ch) {
+                format.install(ch.pipeline());
+            }
+        });
+    }
+
+    private static Contact contact(String name, String host, int port) {
+        Contact contact = new Contact();
+        contact.name = name;
+        contact.color = "\u001B[31m";
+        contact.host = host;
+        contact.port = port;
+        return contact;
+    }
+}
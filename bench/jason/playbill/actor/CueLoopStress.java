@@ -0,0 +1,158 @@
+package jason.playbill.actor;
+
+import jason.playbill.ConsoleColors;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Stress test for the cue state machine. A generated act whose cues loop back on each other is run for millions
+ * of cue transitions, and the run fails unless the mailbox thread's stack and the heap stay flat the whole time.
+ *
+ * One actor plays every cue alone, on an in-JVM transport, so nothing goes over the network and the script
+ * reader does nothing but move from cue to cue through its mailbox. How many transitions to run and how many
+ * cues the loop has are set with {@code playbill.stress.transitions} (default 5,000,000) and
+ * {@code playbill.stress.cues} (default 8). Exits with status 1 if either the stack or the heap grew.
+ */
+public class CueLoopStress {
+    /**
+     * How much the heap may grow past the first sample, in bytes, before the run counts as leaking.
+     */
+    private static final long HEAP_SLACK = 8L * 1024 * 1024;
+
+    /**
+     * Runs the stress test.
+     *
+     * @param args unused
+     * @throws IOException          if the act can't be written
+     * @throws InterruptedException if interrupted while waiting between samples
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long transitions = Long.getLong("playbill.stress.transitions", 5_000_000);
+        int cues = Integer.getInteger("playbill.stress.cues", 8);
+        Configurator.setRootLevel(Level.WARN);
+
+        Path root = Files.createTempDirectory("playbill-stress");
+        writeAct(root, cues);
+        System.setProperty("playbill.scripts", root.toString());
+
+        CastManifest manifest = new CastManifest(List.of(new CastManifest.Entry("Solo", ConsoleColors.ANSI_CYAN,
+                "localhost", 4900, CastManifest.Role.player)));
+        Transport transport = Transport.local(1);
+        Actor solo = new Actor(manifest, "Solo", new CountDownLatch(1), transport);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long started = System.nanoTime();
+        int firstStack = -1;
+        int maxStack = 0;
+        long firstHeap = -1;
+        long maxHeap = 0;
+        long entered = 0;
+        long last = 0;
+
+        while (entered < transitions) {
+            Thread.sleep(1000);
+            Sample sample = sample(solo).join();
+            entered = sample.entered;
+
+            System.gc();
+            long heap = memory.getHeapMemoryUsage().getUsed();
+            if (firstHeap < 0) {
+                firstStack = sample.stack;
+                firstHeap = heap;
+            }
+            maxStack = Math.max(maxStack, sample.stack);
+            maxHeap = Math.max(maxHeap, heap);
+
+            System.out.printf("%,13d cues  %,9d/s  stack %3d frames  heap %,8d KiB%n",
+                    entered, entered - last, sample.stack, heap / 1024);
+            last = entered;
+        }
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        solo.exit();
+        transport.shutdown();
+
+        boolean flatStack = maxStack == firstStack;
+        boolean flatHeap = maxHeap - firstHeap <= HEAP_SLACK;
+        System.out.printf("%,d cue transitions over a %d-cue loop in %.1f s (%,.0f/s)%n",
+                entered, cues, seconds, entered / seconds);
+        System.out.printf("stack: %d frames at first, %d at most: %s%n",
+                firstStack, maxStack, flatStack ? "constant" : "GREW");
+        System.out.printf("heap: %,d KiB at first, %,d KiB at most: %s%n",
+                firstHeap / 1024, maxHeap / 1024, flatHeap ? "constant" : "GREW");
+        if (!flatStack || !flatHeap) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Takes a sample from inside the actor's mailbox, between two script events.
+     *
+     * @param actor the actor
+     * @return a future that completes with the sample
+     */
+    private static CompletableFuture<Sample> sample(Actor actor) {
+        CompletableFuture<Sample> sampled = new CompletableFuture<>();
+        actor.probe(entered -> sampled.complete(new Sample(entered, Thread.currentThread().getStackTrace().length)));
+        return sampled;
+    }
+
+    /**
+     * Writes an act where every cue is a conversation with no lines, each cuing the next, and the last cuing
+     * the first again, so the script never ends.
+     *
+     * @param root the folder to put the scripts folder in
+     * @param cues how many cues the loop has
+     * @throws IOException if the act can't be written
+     */
+    private static void writeAct(Path root, int cues) throws IOException {
+        Path file = root.resolve("scripts").resolve("ep0").resolve("ep0act0.json");
+        Files.createDirectories(file.getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\"header\": {\"episode\": 0, \"act\": 0, \"initial\": {\"scene\": \"loop\", \"cue\": \"c0\"}},\n");
+            out.write(" \"loop\": {\n");
+            for (int cue = 0; cue < cues; cue++) {
+                out.write(String.format("  \"c%d\": {\"type\": \"conversation\", \"actors\": {\"Solo\": \"leading\"},"
+                        + " \"cuesTo\": {\"scene\": \"loop\", \"cue\": \"c%d\"}}%s%n",
+                        cue, (cue + 1) % cues, cue + 1 < cues ? "," : ""));
+            }
+            out.write(" }\n}\n");
+        }
+    }
+
+    /**
+     * What a probe saw inside the mailbox.
+     */
+    private static class Sample {
+        /**
+         * How many cues the actor had entered.
+         */
+        final long entered;
+        /**
+         * How deep the mailbox thread's stack was.
+         */
+        final int stack;
+
+        /**
+         * Instantiates a new Sample.
+         *
+         * @param entered how many cues the actor had entered
+         * @param stack   how deep the mailbox thread's stack was
+         */
+        Sample(long entered, int stack) {
+            this.entered = entered;
+            this.stack = stack;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package jason.playbill.actor;
+
+import jason.playbill.ConsoleColors;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Benchmarks how threads and memory grow with the number of actors hosted in one JVM.
+ *
+ * For each cast size in {@code playbill.bench.sizes} (default 100, 1000 and 5000), that many actors start on a
+ * shared in-JVM transport, join through the first of them, and settle into a cue of their own. Once they have,
+ * the benchmark reports the threads, heap and resident memory each actor added, then sends the whole cast off
+ * before the next size.
+ *
+ * Each actor has an act to itself, so nobody has to reach anyone but the seed, and the figures are what an actor
+ * costs rather than what a full mesh of channels costs. Run once with {@code -Dplaybill.executor=platform} and
+ * once with {@code -Dplaybill.executor=virtual} to compare the two {@link ExecutionMode}s. Resident memory comes
+ * from /proc, so it's only reported on Linux.
+ */
+public class ScalingBench {
+    /**
+     * Runs the benchmark.
+     *
+     * @param args unused
+     * @throws IOException          if the acts can't be written
+     * @throws InterruptedException if interrupted while a cast settles
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String[] sizes = System.getProperty("playbill.bench.sizes", "100,1000,5000").split(",");
+        long settle = Long.getLong("playbill.bench.settle", 3000);
+        Configurator.setRootLevel(Level.WARN);
+        Path root = Files.createTempDirectory("playbill-bench");
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        System.out.printf("%s execution, %d mailbox threads%n",
+                ExecutionMode.fromProperty(), Integer.getInteger("playbill.mailbox.threads", 1));
+        System.out.printf("%8s %12s %14s %16s %16s%n",
+                "actors", "startup", "threads/actor", "heap/actor", "resident/actor");
+
+        for (int round = 0; round < sizes.length; round++) {
+            int actors = Integer.parseInt(sizes[round].trim());
+            ArrayList<CastManifest.Entry> entries = new ArrayList<>();
+            for (int i = 0; i < actors; i++) {
+                entries.add(new CastManifest.Entry("Actor" + i, ConsoleColors.ANSI_CYAN, "localhost",
+                        10_000 + round * 20_000 + i, i == 0 ? CastManifest.Role.seed : CastManifest.Role.player));
+            }
+            CastManifest manifest = new CastManifest(entries);
+
+            System.gc();
+            int baseThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+            long baseHeap = memory.getHeapMemoryUsage().getUsed();
+            long baseRss = rss();
+
+            Transport transport = Transport.local(Integer.getInteger("playbill.threads", 2));
+            CountDownLatch leaving = new CountDownLatch(actors);
+            ArrayList<Actor> cast = new ArrayList<>(actors);
+            long start = System.nanoTime();
+            for (CastManifest.Entry entry : entries) {
+                System.setProperty("playbill.scripts", writeAct(root, entry.getName()).toString());
+                cast.add(new Actor(manifest, entry.getName(), leaving, transport));
+            }
+            double startup = (System.nanoTime() - start) / 1e6;
+
+            Thread.sleep(settle);
+            System.gc();
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            long heap = memory.getHeapMemoryUsage().getUsed();
+            long rss = rss();
+
+            String resident = rss < 0 || baseRss < 0 ? "n/a" : String.format("%,d B", (rss - baseRss) * 1024 / actors);
+            System.out.printf("%,8d %9.0f ms %14.2f %,14d B %16s%n", actors, startup,
+                    (threads - baseThreads) / (double) actors, (heap - baseHeap) / actors, resident);
+
+            for (Actor actor : cast) {
+                actor.exit();
+            }
+            transport.shutdown().syncUninterruptibly();
+            cast.clear();
+        }
+    }
+
+    /**
+     * Writes an act for one actor, with a single cue that only asks them to turn up.
+     *
+     * @param root the folder to put every actor's folder in
+     * @param name the actor's name
+     * @return the folder to load the actor's scripts from
+     * @throws IOException if the act can't be written
+     */
+    private static Path writeAct(Path root, String name) throws IOException {
+        Path folder = root.resolve(name);
+        Path file = folder.resolve("scripts").resolve("ep0").resolve("ep0act0.json");
+        if (Files.exists(file)) {
+            return folder;
+        }
+        Files.createDirectories(file.getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\"header\": {\"episode\": 0, \"act\": 0, \"initial\": {\"scene\": \"s\", \"cue\": \"c\"}},\n");
+            out.write(" \"s\": {\"c\": {\"type\": \"enter\", \"actors\": {\"" + name + "\": \"idle\"}}}\n}\n");
+        }
+        return folder;
+    }
+
+    /**
+     * Reads the process's resident set size out of /proc.
+     *
+     * @return the resident set size in KiB, or -1 if it isn't available
+     */
+    private static long rss() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not Linux.
+        }
+        return -1;
+    }
+}
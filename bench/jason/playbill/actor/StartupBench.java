@@ -0,0 +1,143 @@
+package jason.playbill.actor;
+
+import jason.playbill.ConsoleColors;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Benchmarks what it costs to start an actor: how long its constructor takes, and how much resident memory and
+ * how many threads it adds to the process.
+ *
+ * {@code playbill.bench.actors} actors (default 8) start one after another on loopback sockets, with the first
+ * as the seed, and play a generated act that only asks them to turn up. How they get their event loops is picked
+ * with {@code playbill.bench.transport}:
+ * <ul>
+ *     <li>{@code shared} (the default): one transport for every actor, sized by {@code playbill.threads}.</li>
+ *     <li>{@code owned}: each actor makes its own, from the {@code playbill.*} properties, as a separate
+ *     process per actor would.</li>
+ *     <li>{@code netty}: each actor gets its own NIO group at Netty's default size of two threads per core, which
+ *     is roughly how actors started before transports were shared and sized.</li>
+ * </ul>
+ * Run each mode in a JVM of its own, since resident memory is only measured for the whole process. Resident
+ * memory comes from /proc, so it's only reported on Linux.
+ */
+public class StartupBench {
+    /**
+     * Runs the benchmark.
+     *
+     * @param args unused
+     * @throws IOException          if the act can't be written
+     * @throws InterruptedException if interrupted while the cast settles
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int actors = Integer.getInteger("playbill.bench.actors", 8);
+        String mode = System.getProperty("playbill.bench.transport", "shared");
+        Configurator.setRootLevel(Level.WARN);
+
+        ArrayList<CastManifest.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < actors; i++) {
+            entries.add(new CastManifest.Entry("Actor" + i, ConsoleColors.ANSI_CYAN, "localhost", 4100 + i,
+                    i == 0 ? CastManifest.Role.seed : CastManifest.Role.player));
+        }
+        CastManifest manifest = new CastManifest(entries);
+        Path root = Files.createTempDirectory("playbill-bench");
+        writeAct(root, entries);
+        System.setProperty("playbill.scripts", root.toString());
+
+        long baseRss = rss();
+        int baseThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        Transport shared = mode.equals("shared") ? Transport.fromProperties() : null;
+        CountDownLatch leaving = new CountDownLatch(actors);
+
+        ArrayList<Actor> cast = new ArrayList<>();
+        long[] startups = new long[actors];
+        for (int i = 0; i < actors; i++) {
+            Transport transport = switch (mode) {
+                case "shared" -> shared;
+                case "owned" -> null;
+                case "netty" -> Transport.create(2 * Runtime.getRuntime().availableProcessors(), false);
+                default -> throw new IllegalArgumentException("Unknown transport mode " + mode);
+            };
+            long start = System.nanoTime();
+            cast.add(new Actor(manifest, entries.get(i).getName(), leaving, transport));
+            startups[i] = System.nanoTime() - start;
+        }
+
+        // Let everyone find each other, so every channel and event loop thread that's going to start has.
+        Thread.sleep(Long.getLong("playbill.bench.settle", 3000));
+        long rss = rss();
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        long total = 0;
+        for (long startup : startups) {
+            total += startup;
+        }
+        System.out.printf("%d actors, %s transport%n", actors, mode);
+        System.out.printf("startup: %.1f ms for the seed, %.1f ms on average after it%n",
+                startups[0] / 1e6, actors > 1 ? (total - startups[0]) / 1e6 / (actors - 1) : 0.0);
+        System.out.printf("threads: %d before, %d after, %.1f per actor%n",
+                baseThreads, threads, (threads - baseThreads) / (double) actors);
+        if (rss >= 0) {
+            System.out.printf("resident: %,d KiB before, %,d KiB after, %,d KiB per actor%n",
+                    baseRss, rss, (rss - baseRss) / actors);
+        } else {
+            System.out.println("resident: not available on this platform");
+        }
+
+        for (Actor actor : cast) {
+            actor.exit();
+        }
+        if (shared != null) {
+            shared.shutdown();
+        }
+    }
+
+    /**
+     * Reads the process's resident set size out of /proc.
+     *
+     * @return the resident set size in KiB, or -1 if it isn't available
+     */
+    private static long rss() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not Linux.
+        }
+        return -1;
+    }
+
+    /**
+     * Writes an act with a single cue that only asks the whole cast to turn up.
+     *
+     * @param root    the folder to put the scripts folder in
+     * @param entries the cast
+     * @throws IOException if the act can't be written
+     */
+    private static void writeAct(Path root, List<CastManifest.Entry> entries) throws IOException {
+        Path file = root.resolve("scripts").resolve("ep0").resolve("ep0act0.json");
+        Files.createDirectories(file.getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\"header\": {\"episode\": 0, \"act\": 0, \"initial\": {\"scene\": \"s\", \"cue\": \"c\"}},\n");
+            out.write(" \"s\": {\"c\": {\"type\": \"enter\", \"actors\": {");
+            for (int i = 0; i < entries.size(); i++) {
+                out.write(String.format("%s\"%s\": \"idle\"", i == 0 ? "" : ", ", entries.get(i).getName()));
+            }
+            out.write("}}}\n}\n");
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package jason.playbill.playscript;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Benchmarks loading a very large generated act, with the streaming loader and with the old whole-file parse.
+ *
+ * The act has {@code playbill.bench.lines} lines (default 200,000), twenty to a cue and fifty cues to a scene,
+ * spoken by a cast of four. For the streaming loader it reports how long until the constructor returns, until
+ * the initial cue can be played, and until the whole act has been read, plus how much heap the loaded script
+ * keeps, both whole and for a single reader. For the old approach, which read the file into one string and
+ * handed it to {@link JSONObject}, it reports how long that took and how much heap the text and the parsed
+ * object took between them. Each figure is the median of {@code playbill.bench.runs} runs (default 5), after
+ * two warm-up runs.
+ */
+public class PlayscriptLoadBench {
+    private static final String[] CAST = {"Ana", "Ben", "Cy", "Dee"};
+    private static final int LINES_PER_CUE = 20;
+    private static final int CUES_PER_SCENE = 50;
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args unused
+     * @throws IOException if the act can't be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        int lines = Integer.getInteger("playbill.bench.lines", 200_000);
+        int runs = Integer.getInteger("playbill.bench.runs", 5);
+
+        Path root = Files.createTempDirectory("playbill-bench");
+        Path file = writeAct(root, lines);
+        System.setProperty("playbill.scripts", root.toString());
+        System.out.printf("act: %,d lines in %,d cues, %,d KiB on disk%n",
+                lines, (lines + LINES_PER_CUE - 1) / LINES_PER_CUE, Files.size(file) / 1024);
+
+        for (int warmup = 0; warmup < 2; warmup++) {
+            streamed(null);
+            parsedWhole(file);
+        }
+
+        long[][] whole = new long[4][runs];
+        long[][] reader = new long[4][runs];
+        long[][] parsed = new long[2][runs];
+        for (int run = 0; run < runs; run++) {
+            record(whole, run, streamed(null));
+            record(reader, run, streamed(CAST[0]));
+            record(parsed, run, parsedWhole(file));
+        }
+
+        System.out.printf("%-28s %12s %14s %12s %12s%n", "", "constructor", "initial cue", "whole act", "heap kept");
+        System.out.printf("%-28s %9.1f ms %11.1f ms %9.1f ms %,8d KiB%n", "streamed, whole script",
+                millis(whole[0]), millis(whole[1]), millis(whole[2]), median(whole[3]) / 1024);
+        System.out.printf("%-28s %9.1f ms %11.1f ms %9.1f ms %,8d KiB%n", "streamed, for " + CAST[0],
+                millis(reader[0]), millis(reader[1]), millis(reader[2]), median(reader[3]) / 1024);
+        System.out.printf("%-28s %12s %14s %9.1f ms %,8d KiB%n", "read whole, JSONObject",
+                "", "", millis(parsed[0]), median(parsed[1]) / 1024);
+    }
+
+    /**
+     * Loads the act with the streaming loader.
+     *
+     * @param reader who to load it for, or null to load it whole
+     * @return nanoseconds until the constructor returned, the initial cue loaded, and the whole act loaded, then
+     * the bytes of heap the script keeps
+     * @throws IOException if the act can't be read
+     */
+    private static long[] streamed(String reader) throws IOException {
+        long before = heapAfterGc();
+        long start = System.nanoTime();
+        Playscript script = new Playscript(0, 0, reader);
+        long constructed = System.nanoTime();
+        script.getInitialCue().loaded().toCompletableFuture().join();
+        long initial = System.nanoTime();
+        script.loaded().toCompletableFuture().join();
+        long done = System.nanoTime();
+
+        long kept = heapAfterGc() - before;
+        if (script.getInitialCue().getLineCount() != LINES_PER_CUE) {
+            throw new IllegalStateException("The initial cue didn't load whole.");
+        }
+        return new long[] {constructed - start, initial - start, done - start, kept};
+    }
+
+    /**
+     * Loads the act the way it used to be loaded: the whole file into one string, then into a {@link JSONObject}.
+     *
+     * @param file the act
+     * @return nanoseconds until it was parsed, then the bytes of heap the text and the object take together
+     * @throws IOException if the act can't be read
+     */
+    private static long[] parsedWhole(Path file) throws IOException {
+        long before = heapAfterGc();
+        long start = System.nanoTime();
+        String text = Files.readString(file);
+        JSONObject act = new JSONObject(text);
+        long done = System.nanoTime();
+
+        long kept = heapAfterGc() - before;
+        if (!act.has("header") || text.isEmpty()) {
+            throw new IllegalStateException("The act didn't parse.");
+        }
+        return new long[] {done - start, kept};
+    }
+
+    /**
+     * Writes an act of conversations, each cuing the next, with the lines shared out around the cast.
+     *
+     * @param root  the folder to put the scripts folder in
+     * @param lines how many lines the act has
+     * @return the act's file
+     * @throws IOException if the act can't be written
+     */
+    private static Path writeAct(Path root, int lines) throws IOException {
+        Path file = root.resolve("scripts").resolve("ep0").resolve("ep0act0.json");
+        Files.createDirectories(file.getParent());
+        int cues = (lines + LINES_PER_CUE - 1) / LINES_PER_CUE;
+
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\n  \"header\": {\"episode\": 0, \"act\": 0, \"initial\": {\"scene\": \"s0\", \"cue\": \"c0\"}}");
+            for (int cue = 0; cue < cues; cue++) {
+                int scene = cue / CUES_PER_SCENE;
+                if (cue % CUES_PER_SCENE == 0) {
+                    out.write(String.format("%s,%n  \"s%d\": {%n", cue == 0 ? "" : "\n  }", scene));
+                } else {
+                    out.write(",\n");
+                }
+
+                out.write(String.format("    \"c%d\": {\"type\": \"conversation\", \"actors\": {", cue));
+                for (int actor = 0; actor < CAST.length; actor++) {
+                    out.write(String.format("%s\"%s\": \"%s\"", actor == 0 ? "" : ", ", CAST[actor],
+                            actor == cue % CAST.length ? "leading" : actor % 2 == 0 ? "responding" : "listening"));
+                }
+                out.write("},\n      \"text\": {");
+                int count = Math.min(LINES_PER_CUE, lines - cue * LINES_PER_CUE);
+                for (int line = 1; line <= count; line++) {
+                    String from = line % 2 == 1 ? CAST[cue % CAST.length] : CAST[(cue + 2) % CAST.length];
+                    out.write(String.format("%s\n        \"%d\": {\"delay\": 500, \"from\": \"%s\", "
+                            + "\"text\": \"Line %d of cue %d, and a bit more so it's about the length of a real one.\"}",
+                            line == 1 ? "" : ",", line, from, line, cue));
+                }
+                out.write("\n      }");
+                if (cue + 1 < cues) {
+                    out.write(String.format(",\n      \"cuesTo\": {\"scene\": \"s%d\", \"cue\": \"c%d\"}",
+                            (cue + 1) / CUES_PER_SCENE, cue + 1));
+                }
+                out.write("}");
+            }
+            out.write("\n  }\n}\n");
+        }
+        return file;
+    }
+
+    private static void record(long[][] into, int run, long[] figures) {
+        for (int i = 0; i < into.length; i++) {
+            into[i][run] = figures[i];
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static double millis(long[] nanos) {
+        return median(nanos) / 1e6;
+    }
+
+    private static long heapAfterGc() {
+        System.gc();
+        System.gc();
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,47 @@
+package jason.playbill;
+
+import jason.playbill.actor.Actor;
+import jason.playbill.actor.CastManifest;
+import jason.playbill.actor.ExecutionMode;
+import jason.playbill.actor.Transport;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs the whole cast in a single JVM, with every actor talking over the same in-JVM transport
+ * instead of over loopback sockets. Handy for test and benchmark runs.
+ *
+ * Once the cast is up, it prints how many platform threads and how much heap the JVM is using, so runs
+ * with {@code -Dplaybill.executor=platform} and {@code -Dplaybill.executor=virtual} can be compared as the
+ * cast grows.
+ */
+public class Company {
+    /**
+     * Starts every actor in the cast manifest and waits for them all to leave.
+     *
+     * @param args unused
+     * @throws InterruptedException if interrupted while waiting for the cast to leave
+     * @throws IOException          if the cast manifest can't be read
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        CastManifest manifest = CastManifest.load();
+        Transport transport = Transport.local(Integer.getInteger("playbill.threads", 2));
+        CountDownLatch leaving = new CountDownLatch(manifest.entries().size());
+
+        for (CastManifest.Entry member : manifest.entries()) {
+            new Actor(manifest, member.getName(), leaving, transport);
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.out.printf("%d actors on %s threads: %d platform threads, %d KiB of heap in use%n",
+                manifest.entries().size(), ExecutionMode.fromProperty(),
+                ManagementFactory.getThreadMXBean().getThreadCount(),
+                memory.getHeapMemoryUsage().getUsed() / 1024);
+
+        leaving.await();
+        transport.shutdown();
+    }
+}
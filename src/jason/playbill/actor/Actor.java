@@ -2,26 +2,35 @@ package jason.playbill.actor;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.serialization.ClassResolvers;
-import io.netty.handler.codec.serialization.ObjectDecoder;
-import io.netty.handler.codec.serialization.ObjectEncoder;
-
-import java.io.IOException;
-import java.net.InetSocketAddress;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntConsumer;
 
 import jason.playbill.actor.logger.ActorLogger;
+import jason.playbill.playscript.Cue;
+import jason.playbill.playscript.Line;
+import jason.playbill.playscript.LineRef;
 import jason.playbill.playscript.Playscript;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import static jason.playbill.ConsoleColors.ANSI_RESET;
 
@@ -31,40 +40,76 @@ import static jason.playbill.ConsoleColors.ANSI_RESET;
 public class Actor {
     final private ActorLogger logger = ActorLogger.create(Actor.class);
     /**
-     * The group of ports that <u>all</u> actors will use and check for other actors.
+     * The cast list, whose seeds <u>all</u> actors will roll-call to join the cast. Only one of them has to
+     * answer; everyone else is found through gossip.
      */
-    final public int[] ports = {4000, 4001, 4002, 4003};
-    /**
-     * A latch to keep the program from progressing too far before finishing connecting to other actors.
-     */
-    private final CountDownLatch connecting = new CountDownLatch(ports.length);
+    private final CastManifest manifest;
     /**
      * A latch to keep the program from progressing too far before setting up its own server.
      */
     private final CountDownLatch servStart = new CountDownLatch(1);
 
-    //private CountDownLatch messageWaiting;
-    private final Object scriptSync = new Object();
-    private final Object waitingForFriendsSync = new Object();
-    private final Object leavingSync;
     /**
-     * The Hostname that the actor will be connecting to.
+     * Where lines, cues, arrivals and departures are posted for the script to react to.
+     */
+    private Mailbox mailbox;
+    /**
+     * How long, in milliseconds, to wait on missing cast members before complaining and roll-calling again.
+     */
+    private final long castPatience = 6000;
+    /**
+     * Counted down once the actor exits the stage, for whoever is waiting on it to leave.
+     */
+    private final CountDownLatch leaving;
+    /**
+     * What kind of thread the actor's mailbox and server run on.
      */
-    private final String host = "localhost";
+    private ExecutionMode execution;
+    /**
+     * The host that the actor's server listens on.
+     */
+    private String host;
     /**
      * The ensemble of other active actors available for contact.
      */
-    private static ArrayList<Contact> ensemble = new ArrayList<>();
+    private final Ensemble ensemble = new Ensemble();
+    /**
+     * Every channel this actor has open: its servers, and the channels to and from its contacts. Closed ones
+     * drop out by themselves.
+     */
+    private final ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    /**
+     * Everyone this actor has heard of, whether or not there's a channel to them yet.
+     */
+    private Membership membership;
+    /**
+     * The actors the script is currently waiting on, who get contacted as soon as gossip turns them up.
+     */
+    private final Set<String> wanted = ConcurrentHashMap.newKeySet();
     /**
-     * The group of threads that this actor is actively connected to other servers through.
+     * The roll-calls currently in progress, by target address. Each future completes once its target has
+     * answered, hung up, or couldn't be reached at all.
      */
-    private static ArrayList<Thread> clients = new ArrayList<>();
-    private EventLoopGroup clientGroup;
-    private EventLoopGroup serverBossGroup;
-    private EventLoopGroup serverWorkerGroup;
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> dialing = new ConcurrentHashMap<>();
+    /**
+     * Set once the actor starts leaving, so that nobody bothers reconnecting.
+     */
+    private volatile boolean exiting;
+    /**
+     * The event loop group and channel types shared by this actor's clients and server.
+     */
+    private Transport transport;
+    /**
+     * Whether this actor created its transport, and so is responsible for shutting it down.
+     */
+    private boolean ownsTransport;
+    /**
+     * The format this actor puts messages on the wire in.
+     */
+    private final WireFormat wireFormat = WireFormat.fromProperty();
 
     //todo: label
-    private Thread scriptReader;
+    private ScriptReader scriptReader;
 
     //todo: label
     private String name;
@@ -72,188 +117,361 @@ public class Actor {
     private String color;
     //todo: label
     private int port;
+    /**
+     * Whether lines go to contacts reading the same script as references rather than as text. Turned off with
+     * {@code -Dplaybill.lineRefs=false}.
+     */
+    private static final boolean LINE_REFS = Boolean.parseBoolean(System.getProperty("playbill.lineRefs", "true"));
+    /**
+     * The script this actor is reading. Loaded before joining the cast, since its hash goes out with the roll-call.
+     */
+    private Playscript script;
+    /**
+     * This actor as its contacts see it, built once and sent as the source of everything it writes.
+     * Never modified after it's built.
+     */
+    private Contact self;
 
     //todo: label
     private final int formatWidth = 80;
 
     /**
-     * Instantiates a new Actor.
+     * Instantiates a new Actor on localhost, joining the {@link CastManifest#standard() standard} cast.
      *
      * @param name  the new actor's name.
      * @param color the new actor's main color.
      * @param port  the port on which to open the actor's server.
+     * @param leaving counted down once the actor exits the stage.
      */
-    public Actor(String name, String color, int port, Object leavingSync) {
-        this.leavingSync = leavingSync;
+    public Actor(String name, String color, int port, CountDownLatch leaving) {
+        this(CastManifest.standard(), new CastManifest.Entry(name, color, "localhost", port, CastManifest.Role.player),
+                leaving, null);
+    }
+
+    /**
+     * Instantiates a new Actor playing one of the parts in a manifest.
+     *
+     * @param manifest the cast list.
+     * @param name     the part the new actor plays.
+     * @param leaving  counted down once the actor exits the stage.
+     */
+    public Actor(CastManifest manifest, String name, CountDownLatch leaving) {
+        this(manifest, name, leaving, null);
+    }
+
+    /**
+     * Instantiates a new Actor playing one of the parts in a manifest, on a transport that may be shared
+     * with other actors in the same JVM.
+     *
+     * @param manifest  the cast list.
+     * @param name      the part the new actor plays.
+     * @param leaving   counted down once the actor exits the stage.
+     * @param transport the transport to use, or null to create one from the system properties.
+     */
+    public Actor(CastManifest manifest, String name, CountDownLatch leaving, Transport transport) {
+        this(manifest, part(manifest, name), leaving, transport);
+    }
+
+    /**
+     * Instantiates a new Actor playing a part looked up in a manifest.
+     *
+     * @param manifest  the cast list.
+     * @param part      the part the new actor plays.
+     * @param leaving   counted down once the actor exits the stage.
+     * @param transport the transport to use, or null to create one from the system properties.
+     */
+    private Actor(CastManifest manifest, CastManifest.Entry part, CountDownLatch leaving, Transport transport) {
+        this.manifest = manifest;
+        this.leaving = leaving;
         logger.actorDebug("");
-        logger.actorDebug("Instantiating actor [{}] on port [{}]...", name, port);
+        logger.actorDebug("Instantiating actor [{}] on {}:{}...", part.getName(), part.getHost(), part.getPort());
 
         try {
-            this.name = name;
-            this.color = color;
-            this.port = port;
-
-            clientGroup = new NioEventLoopGroup();
-            for (int target:ports) {
-                clientOpen(this, target);
+            this.name = part.getName();
+            this.color = part.getColor();
+            this.host = part.getHost();
+            this.port = part.getPort();
+            this.self = new Contact(this);
+
+            script = new Playscript(0, 0, name);
+            script.loaded().exceptionally(failure -> {
+                logger.actorError("[{}] couldn't read the rest of its script; it ends wherever reading stopped.", name);
+                logger.trace(failure);
+                return null;
+            });
+            execution = ExecutionMode.fromProperty();
+            mailbox = new Mailbox(name, execution.mailboxExecutor());
+            scriptReader = new ScriptReader(this, script);
+
+            ownsTransport = transport == null;
+            this.transport = ownsTransport ? Transport.fromProperties() : transport;
+            logger.actorDebug("[{}] is using {}.", name, this.transport);
+
+            CastWatcher castWatcher = new CastWatcher();
+            membership = new Membership(new Member(name, color, host, port, 0, Member.State.alive),
+                    this.transport.group(), HeartbeatHandler.INTERVAL * 5);
+            membership.addListener(castWatcher);
+            ensemble.addListener(castWatcher);
+
+            for (CastManifest.Entry seed:manifest.seeds()) {
+                clientOpen(this, seed.getHost(), seed.getPort()).get();
+                if (ensemble.find(seed.getHost(), seed.getPort()) != null) {
+                    logger.actorDebug("[{}] joined the cast through the seed at {}:{}.", name, seed.getHost(), seed.getPort());
+                    break;
+                }
             }
-            connecting.await();
 
             if (findContact(name) != null) {
                 throw new EnsembleCollisionException("There's already an actor with the name " + name);
             }
 
+            // The seed is usually someone else, so the clash only shows up in what the seed gossiped back.
+            Member namesake = membership.impostor();
+            if (namesake != null) {
+                throw new EnsembleCollisionException("There's already an actor with the name " + name
+                        + " at " + namesake.getHost() + ":" + namesake.getPort());
+            }
+
             if (findContact(port) != null) {
-                throw new EnsembleCollisionException("There's already an actor on the port " + port);
+                throw new EnsembleCollisionException("There's already an actor at " + host + ":" + port);
             }
 
-            scriptReader = new Thread(new ScriptReader(this, 0, 0));
-            Thread server = new Thread(new Server(this));
-            server.start();
+            execution.execute(name + "-server", new Server(this));
             servStart.await();
             logger.actorDebug("Successfully instantiated [{}].", name);
-            scriptReader.start();
+            mailbox.post(scriptReader::begin);
         } catch (Exception e) {
             logger.actorError(e);
             logger.trace(e);
         }
     }
 
+    /**
+     * Finds the part an actor plays in a manifest.
+     *
+     * @param manifest the cast list
+     * @param name     the actor's name
+     * @return the actor's entry
+     * @throws IllegalArgumentException if the actor isn't in the manifest
+     */
+    private static CastManifest.Entry part(CastManifest manifest, String name) {
+        CastManifest.Entry part = manifest.find(name);
+        if (part == null) {
+            throw new IllegalArgumentException(name + " isn't in the cast manifest");
+        }
+        return part;
+    }
+
     //todo: better label
     /**
-     * Open a new client
+     * Open a new client, making a single attempt to roll-call the target.
+     *
+     * @param owner     the clients' owner
+     * @param host      the target host
+     * @param target    the target port to attempt to connect to
+     * @return a future that completes once the target has answered, hung up, or couldn't be reached
+     */
+    public CompletableFuture<Void> clientOpen(Actor owner, String host, int target){
+        return clientOpen(owner, host, target, ReconnectPolicy.once());
+    }
+
+    /**
+     * Open a new client, retrying failed connection attempts as the policy allows.
+     * Nothing blocks while connecting: retries are scheduled on the transport's event loop.
+     * If the target is already being roll-called, the roll-call in progress is returned instead.
+     *
      * @param owner     the clients' owner
+     * @param host      the target host
      * @param target    the target port to attempt to connect to
+     * @param policy    how to retry failed attempts
+     * @return a future that completes once the target has answered, hung up, or couldn't be reached
      */
-    public void clientOpen(Actor owner, int target){
-        Client runnable = new Client(owner, target);
-        Thread client = new Thread(runnable);
-        client.start();
-        clients.add(client);
+    public CompletableFuture<Void> clientOpen(Actor owner, String host, int target, ReconnectPolicy policy){
+        CompletableFuture<Void> answered = new CompletableFuture<>();
+        if (target == port && host.equals(this.host)) {
+            answered.complete(null);
+            return answered;
+        }
+
+        String address = host + ":" + target;
+        CompletableFuture<Void> inProgress = dialing.putIfAbsent(address, answered);
+        if (inProgress != null) {
+            return inProgress;
+        }
+        answered.whenComplete((ignored, failure) -> dialing.remove(address, answered));
+
+        logger.actorDebug("Initializing a client for [{}] to roll-call {} ({}).", owner.getName(), address, policy);
+        clientConnect(owner, host, target, policy, 0, answered);
+        return answered;
     }
 
     //todo: better label
     /**
-     * Client connect.
+     * Client connect. Makes one connection attempt, and schedules the next if it fails.
      *
-     * @param owner  the owner
-     * @param target the target
+     * @param owner    the owner
+     * @param host     the target host
+     * @param target   the target port
+     * @param policy   how to retry failed attempts
+     * @param attempt  how many attempts have already failed
+     * @param answered the roll-call's future
      */
-    public void clientConnect(Actor owner, int target) {
-        try {
-            if (target == port) {
-                connecting.countDown();
+    private void clientConnect(Actor owner, String host, int target, ReconnectPolicy policy, int attempt,
+                               CompletableFuture<Void> answered) {
+        if (exiting) {
+            answered.complete(null);
+            return;
+        }
+
+        Bootstrap clientBootstrap = transport.bootstrap(host, target);
+        clientBootstrap.handler(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                installPipeline(ch.pipeline(), new StageHandler(owner, true, answered));
+
+                logger.actorDebug("Pipeline from [{}] to {}:{} initialized.", owner.getName(), host, target);
+            }
+        });
+
+        logger.actorDebug("Roll-calling {}:{}...", host, target);
+        clientBootstrap.connect().addListener((ChannelFuture future) -> {
+            if (future.isSuccess()) {
+                future.channel().closeFuture().addListener(closed -> {
+                    logger.actorDebug("Client roll-calling {}:{} has closed.", host, target);
+                    answered.complete(null);
+                });
                 return;
             }
-            logger.actorDebug("Initializing a client for [{}] to roll-call port {}...", owner.getName(), target);
-            Bootstrap clientBootstrap = new Bootstrap();
-            clientBootstrap.group(clientGroup)
-                    .channel(NioSocketChannel.class)
-                    .option(ChannelOption.TCP_NODELAY, true)
-                    .handler(new ChannelInitializer<SocketChannel>() {
-                        @Override
-                        protected void initChannel(SocketChannel ch) {
-                            ChannelPipeline p = ch.pipeline();
-                            p.addLast(new ObjectEncoder());
-                            p.addLast(new ObjectDecoder(Integer.MAX_VALUE,
-                                    ClassResolvers.cacheDisabled(null)));
-                            p.addLast(new ClientHandler(owner));
-
-                            logger.actorDebug("Pipeline from [{}] to port {} initialized.", owner.getName(), target);
-                        }
-                    });
-            logger.actorDebug("Bootstrap {} configured.", clientBootstrap.hashCode());
 
-            logger.actorDebug("Roll-calling port {}...", target);
-            ChannelFuture future = clientBootstrap.connect(host, target);
-            future.channel().closeFuture().sync();
-            logger.actorDebug("Client roll-calling port {} has closed.", target);
-            connecting.countDown();
-        } catch (Exception e) {
-            logger.actorError(e);
-            e.printStackTrace();
+            int next = attempt + 1;
+            if (!exiting && policy.allows(next)) {
+                long delay = policy.delay(next);
+                logger.actorDebug("Couldn't reach {}:{}; trying again in {}ms.", host, target, delay);
+                transport.group().schedule(() -> clientConnect(owner, host, target, policy, next, answered),
+                        delay, TimeUnit.MILLISECONDS);
+            } else {
+                logger.actorDebug("Nobody answered at {}:{}.", host, target);
+                answered.complete(null);
+            }
+        });
+    }
+
+    /**
+     * Fills in a channel's pipeline: the wire codec, then the shared-memory ring if there may be one, then gossip,
+     * then the heartbeat, then the stage handler itself.
+     *
+     * @param p       the pipeline
+     * @param handler the stage handler for the channel
+     */
+    private void installPipeline(ChannelPipeline p, StageHandler handler) {
+        channels.add(p.channel());
+        ContactTable.of(p.channel()).setSelf(self);
+        wireFormat.install(p);
+        if (RingHandler.ENABLED && wireFormat == WireFormat.binary && !transport.isLocal()) {
+            p.addLast(new RingHandler(this::ringFrom));
         }
+        p.addLast(new GossipHandler(membership));
+        p.addLast(HeartbeatHandler.idleStateHandler());
+        p.addLast(new HeartbeatHandler());
+        p.addLast(handler);
     }
 
     //todo: better label
     /**
-     * Server open.
+     * Server open. When the transport uses domain sockets, the server also listens on one for actors on the
+     * same machine; if that fails, they just reach it over TCP like everyone else.
+     * Returns as soon as binding has started, rather than waiting on the server for the actor's whole life.
      *
      * @param owner the owner
-     * @throws InterruptedException the interrupted exception
      */
-    public void serverOpen(Actor owner) throws InterruptedException {
+    public void serverOpen(Actor owner) {
         logger.actorDebug("Initializing server for [{}]...", owner.getName());
-        serverBossGroup = new NioEventLoopGroup();
-        serverWorkerGroup = new NioEventLoopGroup();
-
-        ServerBootstrap serverBootstrap = new ServerBootstrap();
-        serverBootstrap.group(serverBossGroup, serverWorkerGroup)
-                .channel(NioServerSocketChannel.class)
-                .option(ChannelOption.SO_BACKLOG, 1024)
-                .childHandler(new ChannelInitializer<SocketChannel>() {
-                    @Override
-                    protected void initChannel(SocketChannel ch) {
-                        ChannelPipeline p = ch.pipeline();
-                        p.addLast(new ObjectDecoder(Integer.MAX_VALUE,
-                                ClassResolvers.cacheDisabled(null)));
-                        p.addLast(new ObjectEncoder());
-                        p.addLast(new ServerHandler(owner));
-                        logger.actorDebug("Channel pipeline [{}] to Server [{}] has been initialized.", ch.id(), owner.getName());
+        ChannelInitializer<Channel> childHandler = new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                installPipeline(ch.pipeline(), new StageHandler(owner));
+                logger.actorDebug("Channel pipeline [{}] to Server [{}] has been initialized.", ch.id(), owner.getName());
+            }
+        };
+        ServerBootstrap serverBootstrap = transport.serverBootstrap();
+        serverBootstrap.childHandler(childHandler);
+        serverBootstrap.bind(transport.bindAddress(host, port)).addListener((ChannelFuture bound) -> {
+            if (!bound.isSuccess()) {
+                logger.actorError("Server for [{}] couldn't bind to {}:{}.", owner.getName(), host, port);
+                logger.trace(bound.cause());
+                return;
+            }
+            logger.actorDebug("Server for [{}] bound to {}:{}.", owner.getName(), host, port);
+            keep(bound.channel());
+            bound.channel().closeFuture().addListener(closed ->
+                    logger.actorDebug("Server for [{}] has closed.", owner.getName()));
+        });
+
+        try {
+            ServerBootstrap domainBootstrap = transport.domainServerBootstrap(host, port);
+            if (domainBootstrap != null) {
+                domainBootstrap.childHandler(childHandler).bind().addListener((ChannelFuture bound) -> {
+                    if (bound.isSuccess()) {
+                        keep(bound.channel());
+                        logger.actorDebug("Server for [{}] is also listening on {}.",
+                                owner.getName(), transport.domainAddress(host, port));
+                    } else {
+                        logger.actorError("[{}] couldn't listen on a domain socket; neighbors will use TCP.",
+                                owner.getName());
+                        logger.trace(bound.cause());
                     }
                 });
-        ChannelFuture f = serverBootstrap.bind(port);
+            }
+        } catch (Exception e) {
+            logger.actorError("[{}] couldn't listen on a domain socket; neighbors will use TCP.", owner.getName());
+            logger.trace(e);
+        }
         servStart.countDown();
-        logger.actorDebug("Server for [{}] bound to port {}.", owner.getName(), port);
-        f.channel().closeFuture().sync();
     }
 
-    //todo: better label
     /**
-     * Server close.
+     * Keeps track of a server channel, so it closes when the actor exits. One that only finishes binding after
+     * the actor has exited is closed straight away.
+     *
+     * @param server the server channel
      */
-    public void serverClose() {
-        serverWorkerGroup.shutdownGracefully();
-        serverBossGroup.shutdownGracefully();
-
-        if (serverWorkerGroup.isShuttingDown()){
-            logger.actorDebug("Worker group is shutting down for [{}]", this.getName());
-        } else {
-            logger.actorError("Worker group for [{}] failed to shut down.", this.getName());
-        }
-
-        if (serverBossGroup.isShuttingDown()){
-            logger.actorDebug("Boss group is shutting down for {}", this.name);
-        } else {
-            logger.actorError("Boss group for [{}] failed to shut down.", this.getName());
+    private void keep(Channel server) {
+        channels.add(server);
+        if (exiting) {
+            server.close();
         }
     }
 
     //todo: better label
     /**
-     * Client close.
+     * Transport close. Shuts down the event loop group shared by the server and every client,
+     * unless the transport was handed to this actor by someone else.
      */
-    public void clientClose() {
-        clientGroup.shutdownGracefully();
+    public void transportClose() {
+        if (!ownsTransport) {
+            logger.actorDebug("[{}] is leaving its shared transport running.", this.getName());
+            return;
+        }
+        transport.shutdown();
 
-        if (clientGroup.isShuttingDown()){
-            logger.actorDebug("Client group is shutting down for {}", this.name);
+        if (transport.group().isShuttingDown()){
+            logger.actorDebug("Event loop group is shutting down for [{}]", this.getName());
         } else {
-            logger.actorError("Client group for [{}] failed to shut down.", this.getName());
+            logger.actorError("Event loop group for [{}] failed to shut down.", this.getName());
         }
     }
 
     /**
-     * Actor exits the stage.
+     * Actor exits the stage. Its servers and channels are closed even if the transport is shared and stays up,
+     * so nobody can reach it any more.
      */
     public void exit() {
-        this.serverClose();
-        this.clientClose();
+        exiting = true;
+        channels.close();
+        this.transportClose();
         logger.actorDebug("Exit actor [{}].", this.getName());
 
-        synchronized (leavingSync){
-            leavingSync.notify();
-        }
+        leaving.countDown();
     }
 
     /**
@@ -272,19 +490,128 @@ public class Actor {
      *
      * @param line       the line
      * @param targetName the target name
+     * @return a future that completes with the target's confirmation
      */
-    public void dm(String line, String targetName) {
+    public CompletableFuture<Message> dm(String line, String targetName) {
         Contact target = findContact(targetName);
 
         if (target != null) {
-            target.dm(new Contact(this), line);
+            CompletableFuture<Message> confirmed = target.dm(self, line);
             logger.actorInfo("[{}] direct-messaged \"{}\" to [{}].", this.getName(), line, targetName);
+            return confirmed;
         } else {
             logger.actorError("[{}] tried to direct-message [{}] but couldn't find them.", this.getName(), targetName);
             throw new NullPointerException("There isn't any actor by the name " + targetName);
         }
     }
 
+    /**
+     * Direct message the same line to several actors at once.
+     *
+     * When the binary wire format is in use, the line is encoded a single time, naming this actor by its handle,
+     * and every target it has introduced itself to is written a retained duplicate of that one buffer. Otherwise
+     * the same message goes to every target, so it's never recycled.
+     *
+     * @param line        the line
+     * @param targetNames the target names
+     * @return a future that completes once the line has been written to every target
+     */
+    public Future<Void> broadcast(String line, Collection<String> targetNames) {
+        WriteCombiner combiner = new WriteCombiner();
+        broadcast(line, findAll(targetNames), combiner);
+        Future<Void> written = combiner.finish();
+
+        logger.actorInfo("[{}] broadcast \"{}\" to {}.", this.getName(), line, targetNames);
+        return written;
+    }
+
+    /**
+     * Direct message the same script line to several actors at once. Actors reading the same script as this one,
+     * with the line in their part, are only sent where the line is, and find its text in their own copy; everyone
+     * else gets the text.
+     *
+     * @param line        where the line is in the script
+     * @param targetNames the target names
+     * @return a future that completes once the line has been written to every target
+     */
+    public Future<Void> broadcast(LineRef line, Collection<String> targetNames) {
+        ArrayList<Contact> sameScript = new ArrayList<>(targetNames.size());
+        ArrayList<Contact> otherScript = new ArrayList<>(targetNames.size());
+        for (Contact target:findAll(targetNames)) {
+            if (LINE_REFS && script.getHash().equals(target.getScriptHash()) && script.isInPart(line, target.getName())) {
+                sameScript.add(target);
+            } else {
+                otherScript.add(target);
+            }
+        }
+
+        WriteCombiner combiner = new WriteCombiner();
+        if (!sameScript.isEmpty()) {
+            broadcast(line, sameScript, combiner);
+        }
+        if (!otherScript.isEmpty()) {
+            broadcast(script.getLine(line), otherScript, combiner);
+        }
+        Future<Void> written = combiner.finish();
+
+        logger.actorInfo("[{}] broadcast line {} to {}.", this.getName(), line, targetNames);
+        return written;
+    }
+
+    /**
+     * Finds every named contact, leaving out any that have left the ensemble.
+     *
+     * @param targetNames the target names
+     * @return the contacts that could be found
+     */
+    private ArrayList<Contact> findAll(Collection<String> targetNames) {
+        ArrayList<Contact> targets = new ArrayList<>(targetNames.size());
+        for (String targetName:targetNames) {
+            Contact target = findContact(targetName);
+            if (target == null) {
+                logger.actorError("[{}] tried to broadcast to [{}] but couldn't find them; leaving them out.",
+                        this.getName(), targetName);
+                continue;
+            }
+            targets.add(target);
+        }
+        return targets;
+    }
+
+    /**
+     * Writes the same direct message to several contacts.
+     *
+     * @param data     the line's text or reference
+     * @param targets  the contacts
+     * @param combiner collects the writes' futures
+     */
+    private void broadcast(Object data, Collection<Contact> targets, WriteCombiner combiner) {
+        Message message = Message.pooled(self, Message.MessageType.dm, data);
+
+        if (wireFormat == WireFormat.binary) {
+            // Every channel this actor has rolled-called over knows it by its handle, so one frame fits them all.
+            ByteBuf encoded = MessageCodec.encode(message, ByteBufAllocator.DEFAULT, ContactTable.introduced(self));
+            message.recycle();
+            try {
+                for (Contact target:targets) {
+                    if (ContactTable.of(target.ctx.channel()).hasIntroducedSelf()) {
+                        combiner.add(target.write(encoded.retainedDuplicate()));
+                    } else {
+                        combiner.add(target.write(Message.pooled(self, Message.MessageType.dm, data)));
+                    }
+                }
+            } finally {
+                encoded.release();
+            }
+        } else {
+            // Each channel's gossip handler attaches its own news, so no two channels can share a message.
+            message.recycle();
+            for (Contact target:targets) {
+                combiner.add(target.write(Message.pooled(self, Message.MessageType.dm, data)));
+            }
+        }
+    }
+
     //todo: label
     public void displayDmOut(Actor sender, String line) {
         String toPrint = String.format("%s%s%s > %s%s%s",
@@ -301,19 +628,36 @@ public class Actor {
         System.out.printf("%" + formatWidth + "s\n", toPrint);
     }
 
-    //todo: label
-    public void cueNext(String targetName) {
+    /**
+     * Sends another actor on to the next cue.
+     *
+     * @param targetName the target name
+     * @return a future that completes with the target's confirmation, or fails if the target has left
+     */
+    public CompletableFuture<Message> cueNext(String targetName) {
         Contact target = findContact(targetName);
 
         if (target != null) {
-            target.cueNext(new Contact(this));
+            CompletableFuture<Message> confirmed = target.cueNext(self);
             logger.actorInfo("[{}] sent [{}] to the next cue.", this.getName(), targetName);
+            return confirmed;
         } else {
             logger.actorError("[{}] tried to send [{}] to the next cue, but couldn't find them.", this.getName(), targetName);
-            throw new NullPointerException("There isn't any actor by the name " + targetName);
+            return CompletableFuture.failedFuture(
+                    new NullPointerException("There isn't any actor by the name " + targetName));
         }
     }
 
+    /**
+     * Runs a probe inside this actor's mailbox, between two script events, and tells it how many cues the actor
+     * has entered so far. Only for harnesses that watch a script run from outside.
+     *
+     * @param probe the probe
+     */
+    void probe(IntConsumer probe) {
+        mailbox.post(() -> probe.accept(scriptReader.epoch));
+    }
+
     /**
      * Gets an actor's name.
      *
@@ -332,6 +676,15 @@ public class Actor {
         return color;
     }
 
+    /**
+     * Gets the host an actor is listening on.
+     *
+     * @return the host
+     */
+    public String getHost() {
+        return host;
+    }
+
     /**
      * Gets the port an actor is listening on.
      *
@@ -341,6 +694,24 @@ public class Actor {
         return port;
     }
 
+    /**
+     * Gets where an actor is listening, as host:port.
+     *
+     * @return the address
+     */
+    public String getAddress() {
+        return host + ":" + port;
+    }
+
+    /**
+     * Gets the cast list the actor joined with.
+     *
+     * @return the manifest
+     */
+    public CastManifest getManifest() {
+        return manifest;
+    }
+
     /**
      * Finds a contact in the actor's ensemble list by name.
      *
@@ -348,19 +719,60 @@ public class Actor {
      * @return the contact
      */
     public Contact findContact(String contactName) {
-        Optional<Contact> contact = ensemble.stream().filter(p -> p.getName().equals(contactName)).findAny();
-        return contact.orElse(null);
+        return ensemble.find(contactName);
     }
 
     /**
-     * Finds a contact in the actor's ensemble list by port.
+     * Finds a contact in the actor's ensemble list by port, on the actor's own host.
      *
      * @param contactPort the contact port
      * @return the contact
      */
     public Contact findContact(int contactPort) {
-        Optional<Contact> contact = ensemble.stream().filter(p -> p.getPort() == (contactPort)).findAny();
-        return contact.orElse(null);
+        return ensemble.find(host, contactPort);
+    }
+
+    /**
+     * Finds a contact in the actor's ensemble list by host and port.
+     *
+     * @param contactHost the contact host
+     * @param contactPort the contact port
+     * @return the contact
+     */
+    public Contact findContact(String contactHost, int contactPort) {
+        return ensemble.find(contactHost, contactPort);
+    }
+
+    /**
+     * Gets a future that completes the moment every named actor is in the ensemble.
+     *
+     * @param names the names of the actors to wait for
+     * @return the future
+     */
+    public CompletableFuture<Void> awaitCast(Collection<String> names) {
+        return ensemble.awaitAll(names);
+    }
+
+    /**
+     * Gets a future that completes the moment every named actor is in the ensemble,
+     * or fails with a {@link TimeoutException} if they don't all show up in time.
+     *
+     * @param names   the names of the actors to wait for
+     * @param timeout how long to wait
+     * @param unit    the unit of the timeout
+     * @return the future
+     */
+    public CompletableFuture<Void> awaitCast(Collection<String> names, long timeout, TimeUnit unit) {
+        return ensemble.awaitAll(names).orTimeout(timeout, unit);
+    }
+
+    /**
+     * Gets the actor's ensemble of reachable contacts.
+     *
+     * @return the ensemble
+     */
+    public Ensemble getEnsemble() {
+        return ensemble;
     }
 
     @Override
@@ -368,73 +780,178 @@ public class Actor {
         return "Actor " + color + name + ANSI_RESET + ", port " + port;
     }
 
-    //todo: label
-    class ScriptReader implements Runnable {
+    /**
+     * Reads the script, as a state machine driven by the actor's {@link Mailbox}.
+     *
+     * Every method here runs inside a mailbox event, so none of its state needs guarding. Instead of waiting,
+     * a cue records what it's waiting for and returns; the lines, cues, arrivals and departures the
+     * {@link StageHandler} and {@link CastWatcher} post later pick up where it left off. Lines heard before
+     * the script is ready for them are kept until it is, rather than being lost.
+     *
+     * Moving from one cue to the next is an event of its own too, so no call ever leads into the next cue.
+     * However long the act runs, or however many times its cues loop, the stack stays as deep as a single event,
+     * and nothing is kept from one cue to the next beyond what the new cue needs.
+     */
+    class ScriptReader {
+        /**
+         * What the current cue is doing.
+         */
+        private enum Phase {
+            assembling,     // Waiting for everyone onstage to be in the ensemble.
+            speaking,       // Waiting out the delay before one of this actor's own lines.
+            changing,       // Done with the cue, and about to enter the next one.
+            listening,      // Waiting for a line or cue from someone else.
+            stopped         // Done with the script, or stuck on a direction that doesn't do anything yet.
+        }
+
         //todo: label
         Playscript script;
-        int currentEp;
-        int currentAct;
-        //todo: label
-        JSONObject initial;
+        /**
+         * This actor's part in the script, or -1 if it hasn't turned up in the script so far.
+         */
+        private int part;
 
         //todo: label
         Actor owner;
 
+        /**
+         * What the current cue is doing.
+         */
+        private Phase phase = Phase.stopped;
+        /**
+         * Counts cues entered, so that timers and futures left over from an earlier cue can tell they're stale.
+         */
+        private int epoch;
+        /**
+         * The cue being played.
+         */
+        private Cue cue;
+        /**
+         * What this actor does in the current cue.
+         */
+        private Playscript.Presence myPresence;
+        /**
+         * Everyone onstage for the current cue, by name.
+         */
+        private List<String> onstage;
+        /**
+         * How many times in a row the cast has been slow to assemble for the current cue.
+         */
+        private int pingOthers;
+        /**
+         * The next complaint about the cast being slow to assemble, cancelled as soon as it has.
+         */
+        private Timeout impatience;
+        /**
+         * Which of the current monologue's or conversation's lines is up next.
+         */
+        private int lineNum;
+        /**
+         * Whose line or cue the script is waiting on, while listening.
+         */
+        private String waitingOn;
+        /**
+         * Who has spoken or cued since the script last listened, in order, so nobody gets missed.
+         */
+        private final ArrayDeque<String> heard = new ArrayDeque<>();
+
         //todo: label
-        ScriptReader(Actor owner, int ep, int act) throws IOException {
-            currentEp = ep;
-            currentAct = act;
-            script = new Playscript(currentEp, currentAct);
+        ScriptReader(Actor owner, Playscript script) {
+            this.script = script;
             this.owner = owner;
 
-            initial = script.getInitialCue();
+            part = script.getPart(owner.getName());
         }
 
-        //todo: label
-        @Override
-        public void run() {
-            try {
-                goToCue(initial.getString("scene"), initial.getString("cue"));
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        /**
+         * Moves to a cue in an event of its own, once the cue has loaded.
+         *
+         * @param next the cue
+         */
+        private void enter(Cue next) {
+            phase = Phase.changing;
+            int left = epoch;
+            next.loaded().thenRun(() -> mailbox.post(() -> {
+                if (left != epoch || phase != Phase.changing) {
+                    return;
+                }
+                if (!next.isDefined()) {
+                    logger.actorInfo("[{}] has reached the end of the script at {}.", owner.getName(), next);
+                    phase = Phase.stopped;
+                    return;
+                }
+                goToCue(next);
+            }));
         }
 
-        //todo: label
-        //todo: remove this suppression when you're done filling out switch statements
-        @SuppressWarnings("DuplicateBranchesInSwitch")
-        public void goToCue(String sceneName, String cueName) throws InterruptedException {
-            logger.actorInfo("[{}] going to cue {}/{}.", owner.getName(), sceneName, cueName);
-
-            JSONObject cue = script.getDirection(sceneName, cueName);
-
-            JSONObject presencesJson = cue.getJSONObject("actors");
-            Playscript.Presence tempPre;
-            Playscript.Presence myPresence = null;
-            ArrayList<String> onstage = new ArrayList<>();
+        /**
+         * Starts the script at its initial cue.
+         */
+        void begin() {
+            enter(script.getInitialCue());
+        }
 
-            for(String key:presencesJson.keySet()){
-                tempPre = presencesJson.getEnum(Playscript.Presence.class, key);
+        /**
+         * Handles a line or cue from another actor.
+         *
+         * @param from who sent it
+         */
+        void heard(String from) {
+            heard.add(from);
+            if (phase == Phase.listening) {
+                listen();
+            }
+        }
 
-                if(key.equals(name)){
-                    myPresence = tempPre;
-                } else {
-                    if (tempPre != Playscript.Presence.offstage){
-                        onstage.add(key);
-                    }
-                }
+        /**
+         * Handles someone joining the ensemble.
+         *
+         * @param epoch the cue that was waiting on them
+         */
+        void assembled(int epoch) {
+            if (epoch != this.epoch || phase != Phase.assembling) {
+                return;
             }
+            impatience.cancel();
+            perform();
+        }
 
-            if(myPresence == null){
-                myPresence = Playscript.Presence.offstage;
+        /**
+         * Handles someone leaving the ensemble.
+         *
+         * @param who the actor who left
+         */
+        void departed(String who) {
+            if (phase != Phase.listening || !who.equals(waitingOn) || heard.contains(who)) {
+                return;
             }
+            lost();
+        }
 
-            Playscript.DirectionType type = cue.getEnum(Playscript.DirectionType.class, "type");
+        //todo: label
+        //todo: remove this suppression when you're done filling out switch statements
+        @SuppressWarnings("DuplicateBranchesInSwitch")
+        public void goToCue(Cue cue) {
+            logger.actorInfo("[{}] going to cue {}.", owner.getName(), cue);
+
+            this.cue = cue;
+            epoch++;
+            if (part < 0) {
+                // Parts are handed out as the script loads, so this actor's may not have been known before.
+                part = script.getPart(owner.getName());
+            }
+            if (impatience != null) {
+                impatience.cancel();
+                impatience = null;
+            }
+            myPresence = cue.getPresence(part);
+            onstage = cue.getOnstage(part);
 
             switch (Objects.requireNonNull(myPresence)) {
                 //todo: explain case
                 case offstage -> {
                     logger.actorInfo("[{}] has been instructed to exit the stage.", owner.getName());
+                    phase = Phase.stopped;
                     owner.exit();
                     return;
                 }
@@ -453,102 +970,128 @@ public class Actor {
                 }
             }
 
-            synchronized (waitingForFriendsSync){
-                ArrayList<String> notFound;
-                notFound = waitForFriends(onstage);
-                int pingOthers = 0;
+            phase = Phase.assembling;
+            pingOthers = 0;
+            summon(onstage);
+            int entered = epoch;
+            awaitCast(onstage).thenRun(() -> mailbox.post(() -> assembled(entered)));
+            scheduleImpatience(entered);
+        }
 
-                while (notFound.size() > 0){
-                    pingOthers++;
-                    if (pingOthers > 3){
-                        for(int target:ports){
-                            owner.clientOpen(owner, target);
+        /**
+         * Complains about missing cast members every so often until they turn up.
+         *
+         * @param entered the cue that's waiting
+         */
+        private void scheduleImpatience(int entered) {
+            impatience = mailbox.postLater(() -> {
+                if (entered != epoch || phase != Phase.assembling) {
+                    return;
+                }
+                waitForFriends(onstage);
+                summon(onstage);
+                pingOthers++;
+                if (pingOthers > 3){
+                    for(CastManifest.Entry seed:manifest.seeds()){
+                        if (findContact(seed.getHost(), seed.getPort()) == null) {
+                            owner.clientOpen(owner, seed.getHost(), seed.getPort(), ReconnectPolicy.standard());
                         }
                     }
-
-                    //fixme waiting synchronization
-                    speaks("i am waiting");
-                    waitingForFriendsSync.wait(6000);
-
-                    notFound = waitForFriends(onstage);
                 }
-            }
 
-            JSONObject cuesTo;
+                speaks("i am waiting");
+                scheduleImpatience(entered);
+            }, castPatience, TimeUnit.MILLISECONDS);
+        }
 
-            switch (type) {
+        /**
+         * Carries out the current cue's direction, once the cast has assembled.
+         */
+        private void perform() {
+            switch (cue.getType()) {
                 //todo: explain case
                 case monologue -> {
                     if (myPresence == Playscript.Presence.leading) {
-                        monologue(onstage, cue.getJSONObject("text"));
-                        synchronized (scriptSync) {
-                            scriptSync.notify();
-                        }
+                        monologue(onstage, cue);
                     } else {
-                        synchronized (scriptSync) {
-                            logger.actorDebug("[{}] is waiting for a monologue to finish.",
-                                    owner.getName());
-                            scriptSync.wait();
-                            logger.actorDebug("The monologue that [{}] was waiting on has finished.",
-                                    owner.getName());
-                        }
+                        logger.actorDebug("[{}] is waiting for a monologue to finish.",
+                                owner.getName());
+                        listenFor(cue.getLeader());
                     }
-
-                    cuesTo = cue.getJSONObject("cuesTo");
-                    goToCue(cuesTo.getString("scene"), cuesTo.getString("cue"));
                 }
                 //todo: explain case
                 case conversation -> {
-                    converse(onstage, cue.getJSONObject("text"));
-                    cuesTo = cue.getJSONObject("cuesTo");
-                    goToCue(cuesTo.getString("scene"), cuesTo.getString("cue"));
+                    converse(onstage, cue);
                 }
                 //todo: write and explain case
                 case enter -> {
+                    phase = Phase.stopped;
                 }
                 //todo: write and explain case
                 case exit -> {
+                    phase = Phase.stopped;
                 }
                 //todo: write and explain case
                 case readReg -> {
+                    phase = Phase.stopped;
                 }
                 //todo: write and explain case
                 case writeReg -> {
+                    phase = Phase.stopped;
                 }
                 //todo: write and explain case
                 case readFile -> {
+                    phase = Phase.stopped;
                 }
                 //todo: write and explain case
                 case writeFile -> {
+                    phase = Phase.stopped;
                 }
             }
         }
 
-        //todo: label
-        public void monologue(ArrayList<String> onstage, JSONObject text) throws InterruptedException {
-            int lineNum = 1;
-            JSONObject line = text.getJSONObject(String.valueOf(lineNum));
-            boolean speaking = true;
+        /**
+         * Moves on to whichever cue the current one cues to, in an event of its own.
+         */
+        private void advance() {
+            Cue next = cue.getCuesTo();
+            if (next == null) {
+                logger.actorInfo("[{}] has reached the end of the script.", owner.getName());
+                phase = Phase.stopped;
+                return;
+            }
+            enter(next);
+        }
 
-            while (speaking){
-                Thread.sleep(line.getInt("delay"));
-                owner.speaks(line.getString("text"));
+        //todo: label
+        public void monologue(List<String> onstage, Cue cue) {
+            lineNum = 1;
+            nextMonologueLine();
+        }
 
-                lineNum++;
-                try {
-                    line = text.getJSONObject(String.valueOf(lineNum));
-                } catch (JSONException e){
-                    speaking = false;
+        /**
+         * Speaks the next line of the monologue once its delay is up, or cues everyone onstage once it's over.
+         */
+        private void nextMonologueLine() {
+            Line line = cue.getLine(lineNum);
+            if (line == null) {
+                // Anyone who has left by now just misses the cue; the rest of the cast carries on without them.
+                for (String member:onstage) {
+                    cueNext(member);
                 }
+                advance();
+                return;
             }
 
-            for (String member:onstage) {
-                cueNext(member);
-            }
+            after(line.getDelay(), () -> {
+                owner.speaks(line.getText());
+                lineNum++;
+                nextMonologueLine();
+            });
         }
 
         //todo: label
-        public void converse(ArrayList<String> onstage, JSONObject text) throws InterruptedException {
+        public void converse(List<String> onstage, Cue cue) {
             logger.actorInfo("[{}] entering conversation.",
                     owner.getName());
 
@@ -556,6 +1099,7 @@ public class Actor {
                 if(findContact(member) == null){
                     logger.actorError("[{}] needs to converse with [{}], but they're not onstage.",
                             owner.getName(), member);
+                    advance();
                     return;
                 } else {
                     logger.actorInfo("[{}] will be conversing with [{}].",
@@ -563,38 +1107,102 @@ public class Actor {
                 }
             }
 
-            int lineNum = 1;
-            JSONObject line = text.getJSONObject(String.valueOf(lineNum));
-            boolean conversing = true;
+            lineNum = 1;
+            nextLine();
+        }
 
-            while(conversing){
-                if (line.getString("from").equals(owner.name)){
-                    Thread.sleep(line.getInt("delay"));
-                    displayDmOut(owner, line.getString("text"));
-                    for (String member:onstage) {
-                        dm(line.getString("text"), member);
-                    }
-                } else {
-                    synchronized (scriptSync) {
-                        scriptSync.wait();
-                    }
+        /**
+         * Speaks this actor's lines in the current conversation, up to the next line somebody else has to say.
+         */
+        private void nextLine() {
+            Line line = cue.getLine(lineNum);
+            if (line != null) {
+                if (!line.getFrom().equals(owner.name)) {
+                    listenFor(line.getFrom());
+                    return;
                 }
 
-                lineNum++;
-                try {
-                    line = text.getJSONObject(String.valueOf(lineNum));
-                } catch (JSONException e){
-                    conversing = false;
+                after(line.getDelay(), () -> {
+                    displayDmOut(owner, line.getText());
+                    broadcast(new LineRef(cue.getScene(), cue.getName(), lineNum), onstage);
+                    lineNum++;
+                    nextLine();
+                });
+                return;
+            }
+
+            advance();
+        }
+
+        /**
+         * Waits for the next line or cue from another actor, which may already have arrived.
+         *
+         * @param from the actor expected to send it
+         */
+        private void listenFor(String from) {
+            phase = Phase.listening;
+            waitingOn = from;
+            listen();
+        }
+
+        /**
+         * Takes the line or cue being listened for, if it's been heard, and carries on from there.
+         */
+        private void listen() {
+            if (!heard.remove(waitingOn)) {
+                if (findContact(waitingOn) == null) {
+                    lost();
                 }
+                return;
+            }
+
+            if (cue.getType() == Playscript.DirectionType.conversation) {
+                lineNum++;
+                nextLine();
+            } else {
+                logger.actorDebug("The monologue that [{}] was waiting on has finished.",
+                        owner.getName());
+                advance();
             }
         }
 
+        /**
+         * Gives up on an actor who left in the middle of the cue, and moves on without them.
+         */
+        private void lost() {
+            if (cue.getType() == Playscript.DirectionType.conversation) {
+                logger.actorError("[{}] lost [{}] partway through the conversation.",
+                        owner.getName(), waitingOn);
+            } else {
+                logger.actorError("[{}] lost [{}] partway through their monologue.",
+                        owner.getName(), waitingOn);
+            }
+            advance();
+        }
+
+        /**
+         * Waits out a line's delay on the timer wheel, then carries on in a later event, unless the script has
+         * moved on in the meantime.
+         *
+         * @param delay  how long, in milliseconds
+         * @param action what to do once the delay is up
+         */
+        private void after(long delay, Runnable action) {
+            phase = Phase.speaking;
+            int entered = epoch;
+            mailbox.postLater(() -> {
+                if (entered == epoch && phase == Phase.speaking) {
+                    action.run();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
         /**
          * Checks whether everyone is on stage that needs to onstage.
          * @param waitingFor    The list of people that need to be onstage.
          * @return              The list of people who were not found.
          */
-        public ArrayList<String> waitForFriends(ArrayList<String> waitingFor){
+        public ArrayList<String> waitForFriends(List<String> waitingFor){
             ArrayList<String> notFound = new ArrayList<>();
 
             for (String contact:waitingFor) {
@@ -613,92 +1221,271 @@ public class Actor {
     }
 
     /**
-     * Client handler class for incoming responses from other actors' servers.
+     * Registers a contact that rolled-call over the given channel.
+     *
+     * Both actors in a pair may connect to each other at the same time. When that happens, the channel
+     * opened by the actor with the lower address is kept and the other is closed, so both directions end up
+     * sharing one channel. Both actors apply the same rule, so they agree on which channel survives.
+     *
+     * That only applies to a second channel from the same actor. A different actor that rolls-call under a name
+     * that's already taken is turned away, and its channel closed.
+     *
+     * @param source   the contact as described in its roll-call
+     * @param ctx      the channel the roll-call arrived on
+     * @param outbound whether this actor opened that channel
+     * @return whether the contact is now reachable over the given channel
      */
-    class ClientHandler extends ChannelInboundHandlerAdapter {
-        /**
-         * The Actor who owns the client who owns this handler.
-         */
-        Actor owner;
+    boolean register(Contact source, ChannelHandlerContext ctx, boolean outbound) {
+        Contact incoming = new Contact(source, ctx, outbound);
+        Contact existing = ensemble.addIfAbsent(incoming);
+
+        if (existing == null) {
+            evictOnClose(incoming);
+            logger.actorDebug("[{}] added [{}] to their contact list.", name, source.getName());
+            return true;
+        }
 
-        /**
-         * Instantiates a new Client handler.
-         *
-         * @param owner the owner
-         */
-        ClientHandler(Actor owner) {
-            logger.actorDebug("A new client handler has been instantiated by [{}].", owner.getName());
-            this.owner = owner;
+        if (existing.ctx.channel() == ctx.channel()) {
+            return true;
         }
 
-        //todo: label
-        @Override
-        public void channelActive(ChannelHandlerContext ctx) {
-            logger.actorDebug("ChannelHandler {} has connected to its target.", this.hashCode());
+        if (!existing.getAddress().equals(incoming.getAddress())) {
+            logger.actorError("[{}] turned away a second [{}] at {}; the name is already taken by {}.",
+                    name, source.getName(), incoming.getAddress(), existing.getAddress());
+            if (outbound) {
+                ctx.close();
+            } else {
+                // Answer before hanging up, so the newcomer hears from the gossip who already has the name.
+                Message refusal = Message.pooled(self, Message.MessageType.rollcall, script.getHash());
+                refusal.setGossip(membership.snapshot());
+                ctx.writeAndFlush(refusal).addListener(ChannelFutureListener.CLOSE);
+            }
+            return false;
+        }
 
-            Message message = new Message();
-            message.setSource(new Contact(owner));
-            message.setMessageType(Message.MessageType.rollcall);
-            message.setData(null);
-            ctx.writeAndFlush(message);
+        if (openerAddress(incoming).compareTo(openerAddress(existing)) < 0 && ensemble.replace(existing, incoming)) {
+            evictOnClose(incoming);
+            existing.ctx.close();
+            logger.actorDebug("[{}] switched [{}] over to the channel opened from {}.",
+                    name, source.getName(), openerAddress(incoming));
+            return true;
+        }
+
+        logger.actorDebug("[{}] already shares a channel with [{}]; closing the duplicate.", name, source.getName());
+        ctx.close();
+        return false;
+    }
 
-            InetSocketAddress target = (InetSocketAddress)ctx.channel().remoteAddress();
-            logger.actorInfo("Roll-call sent from [{}] to port {}.", owner.getName(), target.getPort());
+    /**
+     * Gets the text of a received line, looking it up in this actor's script if it was sent by reference. A
+     * reference to a cue that hasn't been read yet waits until it has.
+     *
+     * @param data the line's text or reference
+     * @return a stage that completes with the text
+     */
+    private CompletionStage<String> render(Object data) {
+        if (!(data instanceof LineRef)) {
+            return CompletableFuture.completedFuture((String) data);
         }
+        return script.getLineWhenLoaded((LineRef) data).thenApply(text -> {
+            if (text == null) {
+                logger.actorError("[{}] was sent line {}, but their script doesn't have it.", name, data);
+                return "[" + data + "]";
+            }
+            return text;
+        });
+    }
 
-        //todo: label
-        @Override
-        public void channelRead(ChannelHandlerContext ctx, Object msg) {
-            Message receivedResponse = (Message) msg;
-            Contact source = receivedResponse.getSource();
+    /**
+     * Offers to move a contact's channel onto shared memory if the contact is on this machine and rings are on.
+     * Only called once both sides have registered each other, so the contact knows who the offer is from.
+     *
+     * @param ctx     the contact's channel
+     * @param contact the contact
+     */
+    private void shareRing(ChannelHandlerContext ctx, Contact contact) {
+        RingHandler ring = ctx.pipeline().get(RingHandler.class);
+        if (ring != null && transport.isLocalHost(contact.getHost())) {
+            ring.open(getAddress(), contact.getAddress());
+        }
+    }
 
-            switch (receivedResponse.getMessageType()) {
-                //todo: explain case
-                case dm -> {
+    /**
+     * Gets where the ring offered over a channel should be: the registered contact on that channel has to be on
+     * this machine, and its ring has to be the one it writes to this actor through.
+     *
+     * @param channel the channel the offer came over
+     * @return the ring's file, or null if the channel's contact shouldn't be sharing one
+     */
+    private Path ringFrom(Channel channel) {
+        for (Contact contact : ensemble.contacts()) {
+            if (contact.ctx != null && contact.ctx.channel() == channel) {
+                return transport.isLocalHost(contact.getHost())
+                        ? RingHandler.path(contact.getAddress(), getAddress()) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Makes sure a contact leaves the ensemble once its channel closes.
+     *
+     * @param contact the contact to watch
+     */
+    private void evictOnClose(Contact contact) {
+        contact.ctx.channel().closeFuture().addListener(future -> {
+            if (ensemble.remove(contact)) {
+                logger.actorDebug("[{}] removed [{}] from their contact list.", name, contact.getName());
+
+                // Only the actor whose channels win deduplication tries to get them back.
+                if (!exiting && getAddress().compareTo(contact.getAddress()) < 0) {
+                    clientOpen(this, contact.getHost(), contact.getPort(), ReconnectPolicy.standard());
                 }
-                //todo: explain case
-                case rollcall -> {
-                    logger.actorInfo("[{}] received a roll-call response from [{}], who is on port {}.",
-                            owner.getName(), source.getName(), source.getPort());
-                    if (findContact(source.getName()) == null) {
-                        synchronized (waitingForFriendsSync){
-                            ensemble.add(new Contact(source, ctx));
-                            logger.actorDebug("[{}] added [{}] to their contact list.",
-                                    owner.getName(), source.getName());
-                            waitingForFriendsSync.notify();
-                        }
-                        if (connecting.getCount() != 0) {
-                            connecting.countDown();
-                        }
-                    } else {
-                        logger.actorError("[{}] did NOT add [{}] to their contact list.");
-                    }
+            }
+        });
+    }
+
+    /**
+     * Reaches out to whichever of the named actors gossip has turned up, but who aren't in the ensemble yet.
+     * They're also remembered as wanted, so that anyone gossip turns up later gets contacted right away.
+     *
+     * @param names the names of the actors the script needs
+     */
+    private void summon(Collection<String> names) {
+        wanted.retainAll(names);
+        wanted.addAll(names);
+
+        for (String wantedName:names) {
+            if (findContact(wantedName) == null) {
+                Member member = membership.find(wantedName);
+                if (member != null && member.getState() != Member.State.dead) {
+                    clientOpen(this, member.getHost(), member.getPort(), ReconnectPolicy.standard());
                 }
-                //todo: explain case
-                case confirmation ->
-                    logger.actorInfo("[{}] received a confirmation from [{}] about {}.",
-                            owner.getName(), source.getName(), receivedResponse.getData());
             }
         }
     }
 
     /**
-     * Server handler class for incoming request messages from other actors' clients.
+     * Keeps the journal up to date on who has come and gone, keeps membership and the ensemble in step,
+     * and contacts wanted actors as soon as gossip turns them up.
      */
-    class ServerHandler extends ChannelInboundHandlerAdapter {
+    class CastWatcher implements EnsembleListener, MemberListener {
+        /**
+         * Notes in the journal that a contact has been made.
+         */
+        @Override
+        public void joined(Contact contact) {
+            logger.actorInfo("[{}] has made contact with [{}].", name, contact.getName());
+        }
+
         /**
-         * The Actor who owns the server who owns this handler.
+         * Notes in the journal that a contact has been lost, suspects them unless this actor is the one leaving,
+         * and lets the script know they've gone.
+         */
+        @Override
+        public void left(Contact contact) {
+            logger.actorInfo("[{}] has lost contact with [{}].", name, contact.getName());
+            if (!exiting) {
+                membership.suspect(contact.getName());
+            }
+            mailbox.post(() -> scriptReader.departed(contact.getName()));
+        }
+
+        /**
+         * Contacts a wanted actor as soon as they're heard to be alive, if they aren't already in the ensemble.
+         */
+        @Override
+        public void changed(Member member) {
+            logger.actorDebug("[{}] heard that {}.", name, member);
+            if (member.getState() == Member.State.alive && wanted.contains(member.getName())
+                    && findContact(member.getName()) == null) {
+                clientOpen(Actor.this, member.getHost(), member.getPort(), ReconnectPolicy.standard());
+            }
+        }
+    }
+
+    /**
+     * Gets the address of whichever actor opened the channel to a contact.
+     *
+     * @param contact the contact
+     * @return the opener's address, as host:port
+     */
+    private String openerAddress(Contact contact) {
+        return contact.outbound ? getAddress() : contact.getAddress();
+    }
+
+    /**
+     * Handler class for the single channel an actor shares with each of its contacts.
+     * The same handler runs on channels this actor opened and on channels other actors opened to it.
+     */
+    class StageHandler extends ChannelInboundHandlerAdapter {
+        /**
+         * The Actor who owns this handler.
          */
         Actor owner;
+        /**
+         * Whether the owner opened this handler's channel, rather than accepting it.
+         */
+        boolean outbound;
+        /**
+         * The roll-call to complete once the other actor answers, for outbound channels.
+         */
+        CompletableFuture<Void> answered;
+        /**
+         * Everything heard over this channel so far, done once the last of it has been passed on. Lines can wait
+         * on the script being read, and whatever comes after them waits its turn. Only touched on the event loop.
+         */
+        private CompletionStage<Void> heard = CompletableFuture.completedFuture(null);
 
         /**
-         * Instantiates a new Server handler.
+         * Instantiates a new inbound Stage handler.
          *
-         * @param owner the owner
+         * @param owner    the owner
          */
-        ServerHandler(Actor owner) {
+        StageHandler(Actor owner) {
+            this(owner, false, null);
+        }
+
+        /**
+         * Instantiates a new Stage handler.
+         *
+         * @param owner    the owner
+         * @param outbound whether the owner opened the channel
+         * @param answered the roll-call to complete once the other actor answers, or null
+         */
+        StageHandler(Actor owner, boolean outbound, CompletableFuture<Void> answered) {
             this.owner = owner;
-            logger.actorDebug("[{}]'s server handler has been instantiated.", owner.getName());
+            this.outbound = outbound;
+            this.answered = answered;
+            logger.actorDebug("A new {} stage handler has been instantiated by [{}].",
+                    outbound ? "outbound" : "inbound", owner.getName());
+        }
+
+        //todo: label
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            if (!outbound) {
+                return;
+            }
+            logger.actorDebug("ChannelHandler {} has connected to its target.", this.hashCode());
+
+            Message message = Message.pooled(owner.self, Message.MessageType.rollcall, script.getHash());
+            message.setGossip(membership.snapshot());
+            ctx.writeAndFlush(message);
+
+            logger.actorInfo("Roll-call sent from [{}] to {}.", owner.getName(), ctx.channel().remoteAddress());
+        }
+
+        /**
+         * Drains the channel's outbound queue once the channel can take more.
+         */
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            OutboundQueue queue = OutboundQueue.peek(ctx.channel());
+            if (queue != null && ctx.channel().isWritable()) {
+                queue.drain();
+            }
+            ctx.fireChannelWritabilityChanged();
         }
 
         //todo: label
@@ -706,37 +1493,65 @@ public class Actor {
         public void channelRead(ChannelHandlerContext ctx, Object msg) {
             Message received = (Message) msg;
             Contact source = received.getSource();
-
-            Message response = new Message();
-            response.setSource(new Contact(owner));
+            Message response;
 
             switch (received.getMessageType()) {
                 //todo: explain case
                 case dm -> {
-                    logger.actorInfo("[{}] received the direct-message \"{}\" from [{}].",
-                            owner.getName(), received.getData(), source.getName());
-                    displayDmIn(source, (String) received.getData());
-                    response.setMessageType(Message.MessageType.confirmation);
-                    response.setData("message");
-                    synchronized (scriptSync) {
-                        scriptSync.notify();
-                    }
+                    Object data = received.getData();
+                    String from = source.getName();
+                    heard = heard.thenCompose(ignored -> render(data)).thenAccept(line -> {
+                        logger.actorInfo("[{}] received the direct-message \"{}\" from [{}].",
+                                owner.getName(), line, from);
+                        displayDmIn(source, line);
+                        mailbox.post(() -> scriptReader.heard(from));
+                    });
+                    response = Message.pooled(owner.self, Message.MessageType.confirmation, "message");
                 }
                 //todo: explain case
                 case rollcall -> {
-                    logger.actorInfo("[{}] received a roll-call request from [{}], who is on port {}.",
-                            owner.getName(), source.getName(), source.getPort());
-                    if (findContact(source.getName()) == null) {
-                        clientOpen(owner, source.getPort());
-                    } else {
-                        logger.actorError("[{}] already has [{}] in their contact list.",
-                                owner.getName(), source.getName());
+                    logger.actorInfo("[{}] received a roll-call {} from [{}], who is at {}.",
+                            owner.getName(), outbound ? "response" : "request", source.getName(), source.getAddress());
+                    if (received.getData() instanceof String) {
+                        source.setScriptHash((String) received.getData());
                     }
-                    response.setMessageType(Message.MessageType.rollcall);
-                    response.setData(null);
+                    boolean kept = register(source, ctx, outbound);
+
+                    if (outbound) {
+                        if (answered != null) {
+                            answered.complete(null);
+                        }
+                        received.recycle();
+                        if (kept) {
+                            shareRing(ctx, source);
+                        }
+                        return;
+                    }
+                    if (!kept) {
+                        received.recycle();
+                        return;
+                    }
+                    // The response goes out before the ring offer, so the contact has registered us by the time
+                    // the offer arrives.
+                    response = Message.pooled(owner.self, Message.MessageType.rollcall, script.getHash());
+                    response.setGossip(membership.snapshot());
+                    response.setCorrelationId(received.getCorrelationId());
+                    received.recycle();
+                    ctx.writeAndFlush(response);
+                    shareRing(ctx, source);
+                    return;
                 }
                 //todo: explain case
                 case confirmation -> {
+                    logger.actorInfo("[{}] received a confirmation from [{}] about {} #{}.",
+                            owner.getName(), source.getName(), received.getData(), received.getCorrelationId());
+                    PendingReplies replies = PendingReplies.peek(ctx.channel());
+                    if (received.getCorrelationId() != PendingReplies.UNCORRELATED
+                            && (replies == null || !replies.complete(received))) {
+                        logger.actorDebug("[{}] wasn't waiting on confirmation #{} any more.",
+                                owner.getName(), received.getCorrelationId());
+                    }
+                    return;
                 }
                 //todo: explain case
                 case nextCue -> {
@@ -745,20 +1560,25 @@ public class Actor {
                     logger.actorInfo("[{}] received cue {}/{} from [{}].",
                             owner.getName(), cue[0], cue[1], source.getName());
                     owner.goToCue(cue[0], cue[1]);*/
-                    synchronized (scriptSync) {
-                        scriptSync.notify();
-                    }
-                    response.setMessageType(Message.MessageType.confirmation);
-                    response.setData("nextCue");
+                    String from = source.getName();
+                    heard = heard.thenRun(() -> mailbox.post(() -> scriptReader.heard(from)));
+                    response = Message.pooled(owner.self, Message.MessageType.confirmation, "nextCue");
+                }
+                default -> {
+                    received.recycle();
+                    return;
                 }
             }
 
+            // Confirmations are handed to whoever was waiting on them, but everything else is done with here.
+            response.setCorrelationId(received.getCorrelationId());
+            received.recycle();
             ctx.writeAndFlush(response);
         }
     }
 
     /**
-     * The Server thread class for an actor to listen with.
+     * The task that opens an actor's server, run on a thread of the actor's {@link ExecutionMode}.
      */
     class Server implements Runnable {
         /**
@@ -785,43 +1605,4 @@ public class Actor {
             }
         }
     }
-
-    /**
-     * The Client thread class for an actor to contact others through.
-     */
-    class Client implements Runnable {
-        /**
-         * The Actor who owns this client.
-         */
-        Actor owner;
-        /**
-         * The other actor who this Client is connected to.
-         */
-        Contact contact;
-        /**
-         * The port which this Client intends to connect to.
-         */
-        int target;
-
-        /**
-         * Instantiates a new Client.
-         *
-         * @param owner  the owner
-         * @param target the target
-         */
-        Client(Actor owner, int target) {
-            this.owner = owner;
-            this.target = target;
-        }
-
-        //todo: label
-        public void run() {
-            try {
-                clientConnect(owner, target);
-            } catch (Exception e) {
-                logger.actorError(e);
-                e.printStackTrace();
-            }
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,243 @@
+package jason.playbill.actor;
+
+import jason.playbill.ConsoleColors;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The cast list: who's in the show, what they look like, and where to find them.
+ *
+ * Manifests are .json files shaped like so:
+ * <pre>
+ * {
+ *   "cast": [
+ *     {"name": "Lexa", "color": "ANSI_CYAN", "host": "127.0.0.1", "port": 4000, "role": "seed"},
+ *     ...
+ *   ]
+ * }
+ * </pre>
+ * Colors are either the name of a {@link ConsoleColors} constant or a raw escape sequence. Seeds are the
+ * actors newcomers roll-call to join the cast; if nobody is marked as a seed, everybody is one.
+ *
+ * Spreading actors across machines, or across loopback addresses like 127.0.0.2 on a single machine,
+ * is just a matter of giving them different hosts.
+ */
+public class CastManifest {
+    /**
+     * The part an actor plays in holding the cast together.
+     */
+    public enum Role {
+        seed,           // Newcomers roll-call this actor to join the cast.
+        player          // Found through gossip.
+    }
+
+    /**
+     * One actor's line in the manifest.
+     */
+    public static class Entry {
+        /**
+         * The actor's name.
+         */
+        private final String name;
+        /**
+         * The actor's representative color, as an escape sequence.
+         */
+        private final String color;
+        /**
+         * The host the actor listens on.
+         */
+        private final String host;
+        /**
+         * The port the actor listens on.
+         */
+        private final int port;
+        /**
+         * The part the actor plays in holding the cast together.
+         */
+        private final Role role;
+
+        /**
+         * Instantiates a new Entry.
+         *
+         * @param name  the actor's name
+         * @param color the actor's representative color, as an escape sequence
+         * @param host  the host the actor listens on
+         * @param port  the port the actor listens on
+         * @param role  the part the actor plays in holding the cast together
+         */
+        public Entry(String name, String color, String host, int port, Role role) {
+            this.name = name;
+            this.color = color;
+            this.host = host;
+            this.port = port;
+            this.role = role;
+        }
+
+        /**
+         * Gets the actor's name.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the actor's representative color.
+         *
+         * @return the color, as an escape sequence
+         */
+        public String getColor() {
+            return color;
+        }
+
+        /**
+         * Gets the host the actor listens on.
+         *
+         * @return the host
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * Gets the port the actor listens on.
+         *
+         * @return the port
+         */
+        public int getPort() {
+            return port;
+        }
+
+        /**
+         * Gets the part the actor plays in holding the cast together.
+         *
+         * @return the role
+         */
+        public Role getRole() {
+            return role;
+        }
+    }
+
+    /**
+     * Everyone in the manifest, in the order they're listed.
+     */
+    private final List<Entry> entries;
+
+    /**
+     * Instantiates a new Cast manifest.
+     *
+     * @param entries everyone in the cast
+     */
+    public CastManifest(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /**
+     * Loads the manifest named by the {@code playbill.manifest} system property (default cast.json).
+     * If there's no such file, the {@link #standard() standard} cast is used instead.
+     *
+     * @return the manifest
+     * @throws IOException if the file exists but can't be read
+     */
+    public static CastManifest load() throws IOException {
+        Path path = Paths.get(System.getProperty("playbill.manifest", "cast.json"));
+        if (!Files.exists(path)) {
+            return standard();
+        }
+        return load(path);
+    }
+
+    /**
+     * Loads a manifest from a file.
+     *
+     * @param path the manifest file
+     * @return the manifest
+     * @throws IOException if the file can't be read
+     */
+    public static CastManifest load(Path path) throws IOException {
+        JSONArray cast = new JSONObject(Files.readString(path)).getJSONArray("cast");
+        ArrayList<Entry> entries = new ArrayList<>(cast.length());
+
+        for (int i = 0; i < cast.length(); i++) {
+            JSONObject entry = cast.getJSONObject(i);
+            entries.add(new Entry(entry.getString("name"),
+                    color(entry.getString("color")),
+                    entry.optString("host", "localhost"),
+                    entry.getInt("port"),
+                    entry.optEnum(Role.class, "role", Role.player)));
+        }
+        return new CastManifest(entries);
+    }
+
+    /**
+     * The original four-actor cast, everyone on localhost and everyone a seed.
+     *
+     * @return the manifest
+     */
+    public static CastManifest standard() {
+        return new CastManifest(List.of(
+                new Entry("Lexa", ConsoleColors.ANSI_CYAN, "localhost", 4000, Role.seed),
+                new Entry("Xander", ConsoleColors.ANSI_RED, "localhost", 4001, Role.seed),
+                new Entry("CallMeKey", ConsoleColors.ANSI_BRIGHT_BLACK, "localhost", 4002, Role.seed),
+                new Entry("Fate", ConsoleColors.ANSI_BRIGHT_YELLOW, "localhost", 4003, Role.seed)));
+    }
+
+    private static String color(String color) {
+        if (!color.startsWith("ANSI_")) {
+            return color;
+        }
+        try {
+            return (String) ConsoleColors.class.getField(color).get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("There isn't any console color called " + color, e);
+        }
+    }
+
+    /**
+     * Finds an actor's entry by name.
+     *
+     * @param name the actor's name
+     * @return the entry, or null if they aren't in the cast
+     */
+    public Entry find(String name) {
+        for (Entry entry : entries) {
+            if (entry.getName().equals(name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the actors that newcomers should roll-call to join the cast.
+     *
+     * @return the seeds, or everyone if nobody is marked as a seed
+     */
+    public List<Entry> seeds() {
+        ArrayList<Entry> seeds = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.getRole() == Role.seed) {
+                seeds.add(entry);
+            }
+        }
+        return seeds.isEmpty() ? entries : seeds;
+    }
+
+    /**
+     * Gets everyone in the manifest.
+     *
+     * @return the entries, in the order they're listed
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+}
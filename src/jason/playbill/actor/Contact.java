@@ -1,8 +1,10 @@
 package jason.playbill.actor;
 
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 //todo: label
 public class Contact implements Serializable {
@@ -11,15 +13,36 @@ public class Contact implements Serializable {
     //todo: label
     String color;
     //todo: label
+    String host;
+    /**
+     * The port the contact's server listens on.
+     */
     int port;
+    /**
+     * The hash of the script the contact is reading, as given in its roll-call, or null if it hasn't said.
+     */
+    String scriptHash;
 
     //todo: label
     ChannelHandlerContext ctx;
+    /**
+     * Whether this actor opened the channel to the contact, rather than the contact opening it.
+     */
+    boolean outbound;
+    /**
+     * The bounded queue that everything sent to the contact waits in until the channel can take it.
+     */
+    OutboundQueue queue;
+    /**
+     * The messages sent to the contact that are still waiting on a confirmation.
+     */
+    PendingReplies replies;
 
     //todo: label; is this necessary?
     Contact(){
         this.name = "";
         this.color = "";
+        this.host = "";
         this.port = -1;
         this.ctx = null;
     }
@@ -28,36 +51,75 @@ public class Contact implements Serializable {
     Contact(Actor actor){
         this.name = actor.getName();
         this.color = actor.getColor();
+        this.host = actor.getHost();
         this.port = actor.getPort();
     }
 
     //todo: label
-    Contact(Contact contact, ChannelHandlerContext ctx) {
+    Contact(Contact contact, ChannelHandlerContext ctx, boolean outbound) {
         this.name = contact.getName();
         this.color = contact.getColor();
+        this.host = contact.getHost();
         this.port = contact.getPort();
+        this.scriptHash = contact.getScriptHash();
         this.ctx = ctx;
+        this.outbound = outbound;
+        this.queue = OutboundQueue.of(ctx.channel());
+        this.replies = PendingReplies.of(ctx.channel());
     }
 
-    //todo: label
-    void dm(Contact source, String text) {
-        Message message = new Message();
-        message.setSource(source);
-        message.setMessageType(Message.MessageType.dm);
-        message.setData(text);
+    /**
+     * Direct messages the contact.
+     *
+     * @param source the sender
+     * @param text   the line
+     * @return a future that completes with the contact's confirmation, or fails if none arrives in time
+     */
+    CompletableFuture<Message> dm(Contact source, String text) {
+        return request(Message.pooled(source, Message.MessageType.dm, text));
+    }
 
-        ctx.writeAndFlush(message);
+    /**
+     * Queues an already-built message, or an already-encoded frame, to be written to the contact.
+     *
+     * @param frame the message or frame
+     * @return the write's future
+     */
+    ChannelFuture write(Object frame) {
+        return queue.offer(frame);
     }
 
     //todo: label
     //fixme: cuing other actors should direct them to a specific cue.
-    public void cueNext(Contact source) {
-        Message message = new Message();
-        message.setSource(source);
-        message.setMessageType(Message.MessageType.nextCue);
-        message.setData(null);
+    public CompletableFuture<Message> cueNext(Contact source) {
+        return request(Message.pooled(source, Message.MessageType.nextCue, null));
+    }
+
+    /**
+     * Sends a message that expects a confirmation.
+     *
+     * @param message the message
+     * @return a future that completes with the confirmation
+     */
+    private CompletableFuture<Message> request(Message message) {
+        CompletableFuture<Message> reply = replies.expect(message);
+        int id = message.getCorrelationId();
+
+        queue.offer(message).addListener(written -> {
+            if (!written.isSuccess()) {
+                replies.fail(id, written.cause());
+            }
+        });
+        return reply;
+    }
 
-        ctx.writeAndFlush(message);
+    /**
+     * Gets how many messages are waiting to be written to the contact.
+     *
+     * @return the outbound queue depth
+     */
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.depth();
     }
 
     //todo: label
@@ -80,6 +142,51 @@ public class Contact implements Serializable {
         this.color = color;
     }
 
+    /**
+     * Gets the host the contact's server listens on.
+     *
+     * @return the host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Sets the host the contact's server listens on.
+     *
+     * @param host the host
+     */
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    /**
+     * Gets the hash of the script the contact is reading.
+     *
+     * @return the hash, or null if the contact hasn't said
+     */
+    public String getScriptHash() {
+        return scriptHash;
+    }
+
+    /**
+     * Sets the hash of the script the contact is reading.
+     *
+     * @param scriptHash the hash
+     */
+    public void setScriptHash(String scriptHash) {
+        this.scriptHash = scriptHash;
+    }
+
+    /**
+     * Gets where the contact's server listens, as host:port.
+     *
+     * @return the address
+     */
+    public String getAddress() {
+        return host + ":" + port;
+    }
+
     //todo: label
     public int getPort() {
         return port;
@@ -0,0 +1,180 @@
+package jason.playbill.actor;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.AttributeKey;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The contacts that have already been introduced over a channel, so that later frames can name their source
+ * with a small handle instead of spelling the whole contact out again.
+ *
+ * The first frame a contact sends over a channel, which is normally its roll-call, carries the contact inline
+ * along with the handle it'll go by. Frames arrive in the order they were written, so from then on the other
+ * side already knows the handle, and the sender only writes that. Each side numbers the contacts it sends, and
+ * keeps the handles it has been given separately, so the two never have to agree on anything.
+ *
+ * An actor always introduces itself as {@link #SELF}, on every channel. A frame from the actor itself can then be
+ * encoded once and written to every channel it has introduced itself on, as a broadcast is.
+ *
+ * There is one table per channel, and it goes away with the channel.
+ */
+final class ContactTable {
+    /**
+     * The most handles a channel will hand out. Contacts past this are just always sent inline.
+     */
+    static final int MAX_HANDLES = 0xFFFF;
+    /**
+     * The handle an actor always goes by on its own channels.
+     */
+    static final int SELF = 0;
+
+    /**
+     * The channel attribute the table is kept in.
+     */
+    private static final AttributeKey<ContactTable> KEY = AttributeKey.valueOf(ContactTable.class, "contacts");
+
+    /**
+     * The handles given to contacts sent over the channel, by identity. Only touched on the event loop.
+     */
+    private final IdentityHashMap<Contact, Integer> sent = new IdentityHashMap<>();
+    /**
+     * The contacts introduced by the other side, by handle. Read from the ring reader thread as well.
+     */
+    private final ConcurrentHashMap<Integer, Contact> received = new ConcurrentHashMap<>();
+    /**
+     * The actor on this end of the channel, who gets {@link #SELF}. Null until it's set.
+     */
+    private volatile Contact self;
+    /**
+     * The next handle to give anyone else. Only touched on the event loop.
+     */
+    private int next = SELF + 1;
+    /**
+     * Whether the actor on this end has introduced itself over the channel yet.
+     */
+    private volatile boolean selfIntroduced;
+
+    private ContactTable() {
+    }
+
+    /**
+     * Makes a table for encoding a frame from an actor to any of the channels it has introduced itself on:
+     * the actor goes by {@link #SELF}, and anyone else is spelled out.
+     *
+     * @param self the actor
+     * @return the table
+     */
+    static ContactTable introduced(Contact self) {
+        ContactTable table = new ContactTable();
+        table.self = self;
+        table.sent.put(self, SELF);
+        table.selfIntroduced = true;
+        table.next = MAX_HANDLES;
+        return table;
+    }
+
+    /**
+     * Gets the table for a channel, creating it if it doesn't exist yet.
+     *
+     * @param channel the channel
+     * @return the channel's table
+     */
+    static ContactTable of(Channel channel) {
+        ContactTable table = channel.attr(KEY).get();
+        if (table != null) {
+            return table;
+        }
+
+        table = new ContactTable();
+        ContactTable existing = channel.attr(KEY).setIfAbsent(table);
+        return existing == null ? table : existing;
+    }
+
+    /**
+     * Sets the actor on this end of the channel, who'll be introduced as {@link #SELF}.
+     *
+     * @param self the actor
+     */
+    void setSelf(Contact self) {
+        this.self = self;
+    }
+
+    /**
+     * Checks whether the actor on this end has introduced itself over the channel, so frames from it can name it
+     * by {@link #SELF} alone. Safe to call from any thread.
+     *
+     * @return whether it has
+     */
+    boolean hasIntroducedSelf() {
+        return selfIntroduced;
+    }
+
+    /**
+     * Gets the handle a contact has already been sent with.
+     *
+     * @param contact the contact
+     * @return the handle, or -1 if the contact hasn't been sent yet
+     */
+    int handleOf(Contact contact) {
+        Integer handle = sent.get(contact);
+        return handle == null ? -1 : handle;
+    }
+
+    /**
+     * Picks the handle a contact that's about to be sent inline will go by. Nothing is recorded until the frame
+     * introducing it has been written whole and {@link #commit committed}.
+     *
+     * @param contact the contact
+     * @return the handle, or -1 if the table is full
+     */
+    int reserve(Contact contact) {
+        if (contact == self) {
+            return SELF;
+        }
+        return next >= MAX_HANDLES ? -1 : next;
+    }
+
+    /**
+     * Records that a frame introducing a contact under a reserved handle has been written whole, so later frames
+     * can name it by that handle alone.
+     *
+     * @param contact the contact
+     * @param handle  the handle it was introduced with
+     */
+    void commit(Contact contact, int handle) {
+        sent.put(contact, handle);
+        if (handle == SELF) {
+            selfIntroduced = true;
+        } else {
+            next = handle + 1;
+        }
+    }
+
+    /**
+     * Remembers a contact the other side has introduced.
+     *
+     * @param handle  the handle it'll go by
+     * @param contact the contact
+     */
+    void learn(int handle, Contact contact) {
+        received.put(handle, contact);
+    }
+
+    /**
+     * Looks up a contact the other side has introduced.
+     *
+     * @param handle the handle
+     * @return the contact
+     * @throws CorruptedFrameException if no contact was introduced with that handle
+     */
+    Contact resolve(int handle) {
+        Contact contact = received.get(handle);
+        if (contact == null) {
+            throw new CorruptedFrameException("Unknown contact handle " + handle);
+        }
+        return contact;
+    }
+}
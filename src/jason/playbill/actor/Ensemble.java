@@ -0,0 +1,190 @@
+package jason.playbill.actor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The contacts an actor can currently reach, indexed by both name and address.
+ *
+ * Lookups never lock. Changes are made under the ensemble's own lock, so that the two indexes always
+ * agree, and listeners are told about them once the lock has been released.
+ */
+public class Ensemble {
+    /**
+     * The contacts, by name.
+     */
+    private final ConcurrentHashMap<String, Contact> byName = new ConcurrentHashMap<>();
+    /**
+     * The contacts, by host and port.
+     */
+    private final ConcurrentHashMap<String, Contact> byAddress = new ConcurrentHashMap<>();
+    /**
+     * Who to tell when a contact joins or leaves.
+     */
+    private final CopyOnWriteArrayList<EnsembleListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Finds a contact by name.
+     *
+     * @param name the contact name
+     * @return the contact, or null if nobody by that name is in the ensemble
+     */
+    public Contact find(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Finds a contact by where its server listens.
+     *
+     * @param host the contact host
+     * @param port the contact port
+     * @return the contact, or null if nobody at that address is in the ensemble
+     */
+    public Contact find(String host, int port) {
+        return byAddress.get(host + ":" + port);
+    }
+
+    /**
+     * Adds a contact, unless someone by the same name is already in the ensemble.
+     *
+     * @param contact the contact to add
+     * @return null if the contact was added, otherwise the contact that was already there
+     */
+    public Contact addIfAbsent(Contact contact) {
+        synchronized (this) {
+            Contact existing = byName.putIfAbsent(contact.getName(), contact);
+            if (existing != null) {
+                return existing;
+            }
+            byAddress.put(contact.getAddress(), contact);
+        }
+
+        for (EnsembleListener listener : listeners) {
+            listener.joined(contact);
+        }
+        return null;
+    }
+
+    /**
+     * Swaps one entry for another entry describing the same contact, such as when the contact moves
+     * to a different channel. Listeners aren't told, since nobody joined or left.
+     *
+     * @param existing    the entry expected to be in the ensemble
+     * @param replacement the entry to put in its place
+     * @return whether the swap happened
+     */
+    boolean replace(Contact existing, Contact replacement) {
+        synchronized (this) {
+            if (!byName.replace(existing.getName(), existing, replacement)) {
+                return false;
+            }
+            byAddress.remove(existing.getAddress(), existing);
+            byAddress.put(replacement.getAddress(), replacement);
+            return true;
+        }
+    }
+
+    /**
+     * Removes a contact, as long as that exact entry is still the one in the ensemble.
+     *
+     * @param contact the contact to remove
+     * @return whether the contact was removed
+     */
+    public boolean remove(Contact contact) {
+        synchronized (this) {
+            if (!byName.remove(contact.getName(), contact)) {
+                return false;
+            }
+            byAddress.remove(contact.getAddress(), contact);
+        }
+
+        for (EnsembleListener listener : listeners) {
+            listener.left(contact);
+        }
+        return true;
+    }
+
+    /**
+     * Gets a future that completes as soon as every named contact is in the ensemble.
+     * If they're all here already, the future is complete by the time it's returned.
+     *
+     * @param names the names of the contacts to wait for
+     * @return the future
+     */
+    public CompletableFuture<Void> awaitAll(Collection<String> names) {
+        CompletableFuture<Void> assembled = new CompletableFuture<>();
+        EnsembleListener watcher = new EnsembleListener() {
+            @Override
+            public void joined(Contact contact) {
+                if (containsAll(names)) {
+                    assembled.complete(null);
+                }
+            }
+
+            @Override
+            public void left(Contact contact) {
+            }
+        };
+
+        addListener(watcher);
+        assembled.whenComplete((ignored, failure) -> removeListener(watcher));
+        if (containsAll(names)) {
+            assembled.complete(null);
+        }
+        return assembled;
+    }
+
+    /**
+     * Checks whether every named contact is in the ensemble.
+     *
+     * @param names the contact names
+     * @return whether they're all here
+     */
+    public boolean containsAll(Collection<String> names) {
+        for (String name : names) {
+            if (!byName.containsKey(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets a live, read-only view of every contact in the ensemble.
+     *
+     * @return the contacts
+     */
+    public Collection<Contact> contacts() {
+        return Collections.unmodifiableCollection(byName.values());
+    }
+
+    /**
+     * Gets the number of contacts in the ensemble.
+     *
+     * @return the size
+     */
+    public int size() {
+        return byName.size();
+    }
+
+    /**
+     * Starts telling a listener when contacts join or leave.
+     *
+     * @param listener the listener
+     */
+    public void addListener(EnsembleListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops telling a listener when contacts join or leave.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(EnsembleListener listener) {
+        listeners.remove(listener);
+    }
+}
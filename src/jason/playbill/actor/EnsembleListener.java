@@ -0,0 +1,22 @@
+package jason.playbill.actor;
+
+/**
+ * Gets told whenever a contact joins or leaves an actor's {@link Ensemble}.
+ * Listeners are called on whichever thread changed the ensemble, which is usually a Netty I/O thread,
+ * so they shouldn't block.
+ */
+public interface EnsembleListener {
+    /**
+     * Called after a contact has been added to the ensemble.
+     *
+     * @param contact the new contact
+     */
+    void joined(Contact contact);
+
+    /**
+     * Called after a contact has been removed from the ensemble.
+     *
+     * @param contact the departed contact
+     */
+    void left(Contact contact);
+}
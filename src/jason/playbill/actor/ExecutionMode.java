@@ -0,0 +1,114 @@
+package jason.playbill.actor;
+
+import jason.playbill.actor.logger.ActorLogger;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The kinds of thread an actor can run its own work on, apart from the transport's event loop: draining its
+ * {@link Mailbox}, and starting its server.
+ *
+ * The mode is picked with the {@code playbill.executor} system property, and defaults to {@link #platform}.
+ * Nothing an actor runs this way waits on a monitor, so virtual threads never pin their carrier while they wait.
+ */
+public enum ExecutionMode {
+    /**
+     * Platform threads. Every mailbox drains on {@link Mailbox#shared()}, and each task gets a thread of its own.
+     */
+    platform {
+        @Override
+        Executor mailboxExecutor() {
+            return Mailbox.shared();
+        }
+
+        @Override
+        void execute(String name, Runnable task) {
+            new Thread(task, name).start();
+        }
+    },
+    /**
+     * Virtual threads, one per task and one per mailbox drain, so that an idle actor costs no thread at all.
+     * Needs Java 21; anything older falls back to {@link #platform}.
+     */
+    virtual {
+        @Override
+        Executor mailboxExecutor() {
+            return task -> VirtualThreads.FACTORY.newThread(task).start();
+        }
+
+        @Override
+        void execute(String name, Runnable task) {
+            Thread thread = VirtualThreads.FACTORY.newThread(task);
+            thread.setName(name);
+            thread.start();
+        }
+    };
+
+    private static final ActorLogger logger = ActorLogger.create(ExecutionMode.class);
+
+    /**
+     * Gets what mailboxes should drain on.
+     *
+     * @return the executor
+     */
+    abstract Executor mailboxExecutor();
+
+    /**
+     * Runs a task on a thread of its own.
+     *
+     * @param name what to name the thread
+     * @param task the task
+     */
+    abstract void execute(String name, Runnable task);
+
+    /**
+     * Reads the execution mode out of the {@code playbill.executor} system property.
+     *
+     * @return the configured mode, or {@link #platform} if none is set, the setting isn't a mode, or virtual
+     * threads aren't available
+     */
+    public static ExecutionMode fromProperty() {
+        String name = System.getProperty("playbill.executor", platform.name()).trim();
+        ExecutionMode mode = null;
+        for (ExecutionMode candidate : values()) {
+            if (candidate.name().equalsIgnoreCase(name)) {
+                mode = candidate;
+            }
+        }
+        if (mode == null) {
+            logger.actorError("playbill.executor is set to {}, which isn't one of {}; using platform threads.",
+                    name, Arrays.toString(values()));
+            return platform;
+        }
+        if (mode == virtual && VirtualThreads.FACTORY == null) {
+            logger.actorError("Virtual threads aren't available on Java {}; using platform threads.",
+                    System.getProperty("java.version"));
+            return platform;
+        }
+        return mode;
+    }
+
+    /**
+     * Looks up virtual threads reflectively, so the actors still build and run on Java versions without them.
+     */
+    private static final class VirtualThreads {
+        /**
+         * Makes unstarted virtual threads, or null if there are no virtual threads.
+         */
+        static final ThreadFactory FACTORY = factory();
+
+        private static ThreadFactory factory() {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "playbill-virtual-", 0L);
+                return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Not there at all before Java 19, and behind --enable-preview until 21.
+                return null;
+            }
+        }
+    }
+}
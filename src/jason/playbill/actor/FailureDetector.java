@@ -0,0 +1,52 @@
+package jason.playbill.actor;
+
+/**
+ * Decides, from the heartbeats a contact has sent, whether that contact is still alive.
+ * A detector belongs to a single channel and is only ever used from that channel's event loop.
+ *
+ * Which detector channels get is picked with the {@code playbill.detector} system property:
+ * {@code phi} (the default) or {@code timeout}.
+ */
+public interface FailureDetector {
+    /**
+     * Records that a heartbeat just arrived from the contact.
+     *
+     * @param now the current time, from {@link System#nanoTime()}
+     */
+    void heartbeat(long now);
+
+    /**
+     * Records that something other than a heartbeat just arrived from the contact. It shows the contact is alive,
+     * but says nothing about how often heartbeats come, since heartbeats are only sent when nothing else is.
+     *
+     * @param now the current time, from {@link System#nanoTime()}
+     */
+    void received(long now);
+
+    /**
+     * Checks whether the contact still seems to be alive.
+     *
+     * @param now the current time, from {@link System#nanoTime()}
+     * @return false once the contact should be given up on
+     */
+    boolean isAvailable(long now);
+
+    /**
+     * Creates a detector configured by the {@code playbill.detector} system property.
+     *
+     * @param interval the heartbeat interval, in milliseconds
+     * @return the new detector
+     */
+    static FailureDetector fromProperties(long interval) {
+        String kind = System.getProperty("playbill.detector", "phi");
+        switch (kind) {
+            case "phi":
+                return new PhiAccrualDetector(interval,
+                        Double.parseDouble(System.getProperty("playbill.detector.threshold", "8")));
+            case "timeout":
+                return new TimeoutDetector(interval * Integer.getInteger("playbill.detector.misses", 2));
+            default:
+                throw new IllegalArgumentException("There isn't any failure detector called " + kind);
+        }
+    }
+}
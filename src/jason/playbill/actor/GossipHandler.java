@@ -0,0 +1,55 @@
+package jason.playbill.actor;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.List;
+
+/**
+ * Lets membership news ride along on whatever is already going over a channel.
+ *
+ * Outgoing messages that don't already carry gossip pick up the freshest news from the {@link Membership},
+ * and gossip on incoming messages is folded back into it. Sits ahead of the heartbeat handler, so
+ * heartbeats carry gossip too.
+ */
+class GossipHandler extends ChannelDuplexHandler {
+    /**
+     * Where news is taken from and folded back into.
+     */
+    private final Membership membership;
+
+    /**
+     * Instantiates a new Gossip handler.
+     *
+     * @param membership the actor's membership
+     */
+    GossipHandler(Membership membership) {
+        this.membership = membership;
+    }
+
+    /**
+     * Attaches the freshest news to an outgoing message that isn't already carrying any.
+     */
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof Message && ((Message) msg).getGossip() == null) {
+            List<Member> news = membership.piggyback();
+            if (!news.isEmpty()) {
+                ((Message) msg).setGossip(news);
+            }
+        }
+        ctx.write(msg, promise);
+    }
+
+    /**
+     * Folds the news on an incoming message into the membership.
+     */
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof Message && ((Message) msg).getGossip() != null) {
+            membership.apply(((Message) msg).getGossip());
+        }
+        ctx.fireChannelRead(msg);
+    }
+}
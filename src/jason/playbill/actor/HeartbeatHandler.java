@@ -0,0 +1,82 @@
+package jason.playbill.actor;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import jason.playbill.actor.logger.ActorLogger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a channel's heartbeat going, and closes the channel once its {@link FailureDetector} gives up
+ * on the other side. Closing the channel is what evicts the contact from the ensemble.
+ *
+ * Sits behind an {@link IdleStateHandler}: a heartbeat goes out whenever nothing else has been written
+ * for an interval, and the detector is consulted whenever nothing has been read for one.
+ * Heartbeats are swallowed here, while every other message is passed on to the next handler.
+ *
+ * The interval is read from the {@code playbill.heartbeat} system property, in milliseconds (default 1000).
+ */
+class HeartbeatHandler extends ChannelInboundHandlerAdapter {
+    /**
+     * The heartbeat interval, in milliseconds.
+     */
+    static final long INTERVAL = Long.getLong("playbill.heartbeat", 1000);
+
+    private static final ActorLogger logger = ActorLogger.create(HeartbeatHandler.class);
+
+    /**
+     * Decides when the other side has been silent for too long.
+     */
+    private final FailureDetector detector = FailureDetector.fromProperties(INTERVAL);
+
+    /**
+     * Creates the idle state handler that drives a heartbeat handler.
+     *
+     * @return the idle state handler
+     */
+    static IdleStateHandler idleStateHandler() {
+        return new IdleStateHandler(INTERVAL, INTERVAL, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tells the detector the other side is alive, and swallows the message if it was only a heartbeat.
+     */
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof Message && ((Message) msg).getMessageType() == Message.MessageType.heartbeat) {
+            detector.heartbeat(System.nanoTime());
+            ((Message) msg).recycle();
+            return;
+        }
+        detector.received(System.nanoTime());
+        ctx.fireChannelRead(msg);
+    }
+
+    /**
+     * Sends a heartbeat when the channel has gone quiet on this side, and closes it once the detector gives up
+     * on the other side.
+     */
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (!(evt instanceof IdleStateEvent)) {
+            super.userEventTriggered(ctx, evt);
+            return;
+        }
+
+        switch (((IdleStateEvent) evt).state()) {
+            case WRITER_IDLE -> {
+                ctx.writeAndFlush(Message.pooled(null, Message.MessageType.heartbeat, null));
+            }
+            case READER_IDLE -> {
+                if (!detector.isAvailable(System.nanoTime())) {
+                    logger.actorError("Lost the heartbeat on {}; closing the channel.", ctx.channel().remoteAddress());
+                    ctx.close();
+                }
+            }
+            default -> {
+            }
+        }
+    }
+}
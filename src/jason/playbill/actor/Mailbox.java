@@ -0,0 +1,172 @@
+package jason.playbill.actor;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jason.playbill.actor.logger.ActorLogger;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An actor's mailbox: events posted from any thread, handled one at a time, in order.
+ *
+ * Netty handlers, timers and listeners only ever post events here, and the actor's script only ever runs inside
+ * one, so the script's state needs no locks and an event can't be missed because nobody was waiting for it yet.
+ *
+ * The queue is drained by whatever {@link Executor} the mailbox is given, a batch at a time. Since a mailbox is
+ * never drained by two threads at once, many mailboxes can share a small pool, or even a single thread: by
+ * default, every mailbox in the JVM shares {@link #shared()}, sized by {@code playbill.mailbox.threads} (default 1).
+ *
+ * Events can also be posted after a delay. Delays are kept on one hashed timer wheel for the whole JVM, whose
+ * tick is {@code playbill.timer.tick} milliseconds (default 10), so waiting between lines doesn't take up a thread.
+ *
+ * Events mustn't wait on anything themselves: with one shared thread, an event that waits holds up every mailbox
+ * in the JVM. Code that would otherwise wait can check {@link #isDraining()} and give up instead.
+ */
+final class Mailbox {
+    /**
+     * How many events to handle before giving the executor's thread back to other mailboxes.
+     */
+    private static final int BATCH = 64;
+
+    private static final ActorLogger logger = ActorLogger.create(Mailbox.class);
+
+    /**
+     * Whether the current thread is in the middle of draining a mailbox.
+     */
+    private static final ThreadLocal<Boolean> DRAINING = ThreadLocal.withInitial(() -> false);
+
+
+    /**
+     * The timer wheel every delayed event in the JVM waits on.
+     */
+    private static final HashedWheelTimer TIMER = new HashedWheelTimer(new DefaultThreadFactory("playbill-timer", true),
+            Long.getLong("playbill.timer.tick", 10), TimeUnit.MILLISECONDS);
+
+    /**
+     * The events waiting to be handled, oldest first.
+     */
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    /**
+     * Whether a drain has been handed to the executor and hasn't finished yet.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    /**
+     * What the mailbox is drained on.
+     */
+    private final Executor executor;
+    /**
+     * The name of the actor the mailbox belongs to.
+     */
+    private final String owner;
+
+    /**
+     * Instantiates a new Mailbox.
+     *
+     * @param owner    the name of the actor it belongs to
+     * @param executor what to drain it on
+     */
+    Mailbox(String owner, Executor executor) {
+        this.owner = owner;
+        this.executor = executor;
+    }
+
+    /**
+     * Posts an event, to be handled after everything already posted.
+     *
+     * @param event the event
+     */
+    void post(Runnable event) {
+        queue.offer(event);
+        schedule();
+    }
+
+    /**
+     * Posts an event once a delay has passed. Nothing waits in the meantime.
+     *
+     * @param event the event
+     * @param delay how long to wait
+     * @param unit  the unit of the delay
+     * @return a handle that can cancel the event before it's posted
+     */
+    Timeout postLater(Runnable event, long delay, TimeUnit unit) {
+        return TIMER.newTimeout(timeout -> post(event), delay, unit);
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // The actor has left, and nobody is reading its mail any more.
+                queue.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the executor mailboxes are drained on unless they're given another. Its pool is only made the first
+     * time this is called, so a JVM whose mailboxes all drain elsewhere never starts its threads.
+     *
+     * @return the executor
+     */
+    static Executor shared() {
+        return Shared.EXECUTOR;
+    }
+
+    /**
+     * Checks whether the current thread is handling a mailbox's events, and so mustn't block.
+     *
+     * @return whether it is
+     */
+    static boolean isDraining() {
+        return DRAINING.get();
+    }
+
+    private void drain() {
+        DRAINING.set(true);
+        try {
+            Runnable event;
+            for (int handled = 0; handled < BATCH && (event = queue.poll()) != null; handled++) {
+                try {
+                    event.run();
+                } catch (RuntimeException e) {
+                    logger.actorError("[{}] failed to handle an event.", owner);
+                    logger.trace(e);
+                }
+            }
+        } finally {
+            // Even if an event threw an Error, the next post or what's still queued has to get a drain of its own.
+            DRAINING.set(false);
+            scheduled.set(false);
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Gets how many events are waiting to be handled.
+     *
+     * @return the queue depth
+     */
+    int depth() {
+        return queue.size();
+    }
+
+    /**
+     * Holds the shared executor, so it's only made once somebody asks for it.
+     */
+    private static final class Shared {
+        /**
+         * The shared pool, sized by {@code playbill.mailbox.threads}.
+         */
+        static final Executor EXECUTOR = Executors.newFixedThreadPool(Integer.getInteger("playbill.mailbox.threads", 1),
+                new DefaultThreadFactory("playbill-mailbox", true));
+    }
+}
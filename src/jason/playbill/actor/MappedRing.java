@@ -0,0 +1,237 @@
+package jason.playbill.actor;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A single-producer, single-consumer ring of {@link MessageCodec} frames in a memory-mapped file, so that
+ * two actor processes on the same machine can hand each other messages without a syscall per message.
+ *
+ * The file is laid out like so:
+ * <pre>
+ *     long    head: how far the consumer has read (its own cache line)
+ *     int     capacity of the data region, a power of two
+ *     long    tail: how far the producer has written (its own cache line)
+ *     long    closed flag, set by the producer
+ *     ...     data region: frames exactly as they go over a socket, each padded to 8 bytes
+ * </pre>
+ * A frame that won't fit before the end of the data region is preceded by a padding marker, and starts
+ * over at the beginning instead. The producer publishes frames by releasing the tail, and the consumer
+ * frees their space by releasing the head, so each side only ever writes its own position.
+ *
+ * Each ring only goes one way; a pair of actors uses one ring per direction.
+ */
+final class MappedRing {
+    /**
+     * The default size of the data region, read from the {@code playbill.shm.capacity} system property.
+     */
+    static final int CAPACITY = Integer.getInteger("playbill.shm.capacity", 1024 * 1024);
+
+    private static final int HEAD = 0;
+    private static final int CAPACITY_FIELD = 8;
+    private static final int TAIL = 64;
+    private static final int CLOSED = 72;
+    private static final int HEADER = 128;
+
+    private static final int ALIGNMENT = Long.BYTES;
+    private static final int PADDING = -1;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /**
+     * The ring's file.
+     */
+    private final Path path;
+    /**
+     * The whole file, mapped.
+     */
+    private final MappedByteBuffer buffer;
+    /**
+     * A view of the buffer whose position and limit are moved around for bulk copies, so the mapping's own stay put.
+     */
+    private final ByteBuffer view;
+    /**
+     * The size of the data region, a power of two.
+     */
+    private final int capacity;
+    /**
+     * Turns a position into an offset in the data region.
+     */
+    private final int mask;
+    /**
+     * The contacts introduced over the ring's channel, for resolving handles. Consumer only.
+     */
+    private final ContactTable contacts;
+
+    /**
+     * This side's own position: the tail for the producer, the head for the consumer.
+     */
+    private long position;
+    /**
+     * The last position read from the other side, which is only read again once it looks like the ring is full.
+     */
+    private long otherCache;
+
+    private MappedRing(Path path, MappedByteBuffer buffer, int capacity, ContactTable contacts) {
+        this.path = path;
+        this.buffer = buffer;
+        this.view = buffer.duplicate();
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.contacts = contacts;
+    }
+
+    /**
+     * Creates a ring file for the producing side, replacing any file left behind at the same path.
+     *
+     * @param path     where to create the file
+     * @param capacity the size of the data region, a power of two
+     * @return the producing end of the ring
+     * @throws IOException if the file can't be created or mapped
+     */
+    static MappedRing create(Path path, int capacity) throws IOException {
+        if (Integer.bitCount(capacity) != 1 || capacity <= MessageCodec.MAX_FRAME_LENGTH + Integer.BYTES) {
+            throw new IllegalArgumentException("A ring's capacity has to be a power of two bigger than a frame, not " + capacity);
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + capacity);
+        }
+        buffer.putInt(CAPACITY_FIELD, capacity);
+        LONGS.setRelease(buffer, HEAD, 0L);
+        LONGS.setRelease(buffer, TAIL, 0L);
+        return new MappedRing(path, buffer, capacity, null);
+    }
+
+    /**
+     * Maps an existing ring file for the consuming side.
+     *
+     * @param path     the file the producer created
+     * @param contacts the contacts introduced over the ring's channel
+     * @return the consuming end of the ring
+     * @throws IOException if the file can't be mapped
+     */
+    static MappedRing attach(Path path, ContactTable contacts) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, file.size());
+        }
+        int capacity = buffer.getInt(CAPACITY_FIELD);
+        if (Integer.bitCount(capacity) != 1 || HEADER + capacity != buffer.capacity()) {
+            throw new IOException(path + " isn't a ring file");
+        }
+        MappedRing ring = new MappedRing(path, buffer, capacity, contacts);
+        ring.position = (long) LONGS.getAcquire(buffer, HEAD);
+        return ring;
+    }
+
+    /**
+     * Copies a frame, length field included, into the ring. Producer only.
+     *
+     * @param frame the frame, which is left unread
+     * @return true if the frame went in, false if there wasn't room for it yet
+     */
+    boolean offer(ByteBuf frame) {
+        int length = frame.readableBytes();
+        int record = align(length);
+        int offset = (int) (position & mask);
+        int untilEnd = capacity - offset;
+        int needed = record <= untilEnd ? record : untilEnd + record;
+
+        if (position + needed - otherCache > capacity) {
+            otherCache = (long) LONGS.getAcquire(buffer, HEAD);
+            if (position + needed - otherCache > capacity) {
+                return false;
+            }
+        }
+
+        if (record > untilEnd) {
+            buffer.putInt(HEADER + offset, PADDING);
+            position += untilEnd;
+            offset = 0;
+        }
+
+        view.clear();
+        view.position(HEADER + offset).limit(HEADER + offset + length);
+        frame.getBytes(frame.readerIndex(), view);
+        position += record;
+        LONGS.setRelease(buffer, TAIL, position);
+        return true;
+    }
+
+    /**
+     * Takes the next frame out of the ring and decodes it. Consumer only.
+     *
+     * @return the message, or null if the ring is empty
+     */
+    Message poll() {
+        if (position == otherCache) {
+            otherCache = (long) LONGS.getAcquire(buffer, TAIL);
+        }
+
+        while (position != otherCache) {
+            int offset = (int) (position & mask);
+            int length = buffer.getInt(HEADER + offset);
+            if (length == PADDING) {
+                position += capacity - offset;
+                continue;
+            }
+
+            view.clear();
+            view.position(HEADER + offset + Integer.BYTES).limit(HEADER + offset + Integer.BYTES + length);
+            Message message = MessageCodec.read(Unpooled.wrappedBuffer(view), contacts);
+            position += align(Integer.BYTES + length);
+            LONGS.setRelease(buffer, HEAD, position);
+            return message;
+        }
+
+        LONGS.setRelease(buffer, HEAD, position);
+        return null;
+    }
+
+    /**
+     * Gets whether the producer has closed the ring.
+     *
+     * @return true once the producer is done with it
+     */
+    boolean isClosed() {
+        return (long) LONGS.getAcquire(buffer, CLOSED) != 0;
+    }
+
+    /**
+     * Marks the ring closed and deletes its file. Producer only; mappings already made stay valid until
+     * they're collected.
+     *
+     * @throws IOException if the file can't be deleted
+     */
+    void close() throws IOException {
+        LONGS.setRelease(buffer, CLOSED, 1L);
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Gets the ring's file.
+     *
+     * @return the file
+     */
+    Path path() {
+        return path;
+    }
+
+    private static int align(int length) {
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
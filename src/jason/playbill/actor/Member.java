@@ -0,0 +1,153 @@
+package jason.playbill.actor;
+
+import java.io.Serializable;
+
+/**
+ * What one actor believes about another actor's membership in the cast, as spread by gossip.
+ * Members are immutable; news about an actor replaces its Member outright.
+ */
+public class Member implements Serializable {
+    /**
+     * How an actor is believed to be doing.
+     */
+    public enum State {
+        alive,          // Reachable, as far as anyone knows.
+        suspect,        // Somebody lost contact, and the actor hasn't refuted it yet.
+        dead            // Suspected for too long. Only a higher incarnation brings the actor back.
+    }
+
+    /**
+     * The actor's name.
+     */
+    private final String name;
+    /**
+     * The actor's representative color.
+     */
+    private final String color;
+    /**
+     * The host the actor is listening on.
+     */
+    private final String host;
+    /**
+     * The port the actor is listening on.
+     */
+    private final int port;
+    /**
+     * Bumped by the actor itself whenever it needs to refute a rumor of its death.
+     */
+    private final int incarnation;
+    /**
+     * How the actor is believed to be doing.
+     */
+    private final State state;
+
+    /**
+     * Instantiates a new Member.
+     *
+     * @param name        the actor's name
+     * @param color       the actor's representative color
+     * @param host        the host the actor is listening on
+     * @param port        the port the actor is listening on
+     * @param incarnation the actor's incarnation
+     * @param state       how the actor is believed to be doing
+     */
+    public Member(String name, String color, String host, int port, int incarnation, State state) {
+        this.name = name;
+        this.color = color;
+        this.host = host;
+        this.port = port;
+        this.incarnation = incarnation;
+        this.state = state;
+    }
+
+    /**
+     * Gets a copy of this member in a different state and incarnation.
+     *
+     * @param state       the new state
+     * @param incarnation the new incarnation
+     * @return the copy
+     */
+    public Member with(State state, int incarnation) {
+        return new Member(name, color, host, port, incarnation, state);
+    }
+
+    /**
+     * Checks whether this news should replace what is currently believed about the same actor.
+     * Higher incarnations always win. Within an incarnation, suspect beats alive and dead beats both.
+     *
+     * @param current the current belief, or null if the actor isn't known
+     * @return whether this news is newer
+     */
+    public boolean supersedes(Member current) {
+        if (current == null) {
+            return state != State.dead;
+        }
+
+        return switch (state) {
+            case alive -> incarnation > current.incarnation;
+            case suspect -> current.state != State.dead
+                    && (incarnation > current.incarnation
+                        || (incarnation == current.incarnation && current.state == State.alive));
+            case dead -> current.state != State.dead && incarnation >= current.incarnation;
+        };
+    }
+
+    /**
+     * Gets the actor's name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the actor's representative color.
+     *
+     * @return the color
+     */
+    public String getColor() {
+        return color;
+    }
+
+    /**
+     * Gets the host the actor is listening on.
+     *
+     * @return the host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Gets the port the actor is listening on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Gets the actor's incarnation.
+     *
+     * @return the incarnation
+     */
+    public int getIncarnation() {
+        return incarnation;
+    }
+
+    /**
+     * Gets how the actor is believed to be doing.
+     *
+     * @return the state
+     */
+    public State getState() {
+        return state;
+    }
+
+    @Override
+    public String toString() {
+        return name + "@" + host + ":" + port + " " + state + "#" + incarnation;
+    }
+}
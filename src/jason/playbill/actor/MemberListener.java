@@ -0,0 +1,14 @@
+package jason.playbill.actor;
+
+/**
+ * Gets told whenever gossip changes what is believed about a member of the cast.
+ * Listeners are called on Netty I/O threads, so they shouldn't block.
+ */
+public interface MemberListener {
+    /**
+     * Called after the belief about a member has changed.
+     *
+     * @param member the member, as now believed
+     */
+    void changed(Member member);
+}
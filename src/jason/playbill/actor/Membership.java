@@ -0,0 +1,253 @@
+package jason.playbill.actor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cast as an actor knows it, kept up to date by SWIM-style gossip.
+ *
+ * Unlike the {@link Ensemble}, which only holds actors with an open channel, membership covers every
+ * actor anyone has heard about. A new actor only has to roll-call one seed: the seed answers with
+ * everything it knows, and news of the newcomer then spreads by riding along on the messages and
+ * heartbeats that are already flowing. Each piece of news is passed on a few times per log2 of the cast
+ * size, so it reaches everyone in O(log n) rounds.
+ *
+ * An actor that loses contact with another only suspects it at first. If the suspect doesn't refute the
+ * rumor (by gossiping itself alive under a higher incarnation) before the suspicion timeout, it's
+ * declared dead.
+ */
+public class Membership {
+    /**
+     * The most pieces of news to attach to a single message.
+     */
+    static final int PIGGYBACK = 8;
+    /**
+     * How many times per log2 of the cast size each piece of news is passed on.
+     */
+    static final int LAMBDA = 3;
+
+    /**
+     * Runs the suspicion timeouts.
+     */
+    private final ScheduledExecutorService timer;
+    /**
+     * How long a suspect has to refute the rumor before it's declared dead, in milliseconds.
+     */
+    private final long suspicionTimeout;
+    /**
+     * Who to tell when news about a member is taken on.
+     */
+    private final CopyOnWriteArrayList<MemberListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * This actor, as it presents itself to everyone else. Guarded by this.
+     */
+    private Member self;
+    /**
+     * Everyone known, this actor included, by name. Guarded by this.
+     */
+    private final HashMap<String, Member> members = new HashMap<>();
+    /**
+     * News still being passed on, by member name, with how many more times to pass it on. Guarded by this.
+     */
+    private final HashMap<String, Integer> rumors = new HashMap<>();
+    /**
+     * Another actor heard of under this actor's name, but at a different address. Guarded by this.
+     */
+    private Member impostor;
+
+    /**
+     * Instantiates a new Membership.
+     *
+     * @param self             this actor
+     * @param timer            where to run suspicion timeouts
+     * @param suspicionTimeout how long a suspect has to refute the rumor, in milliseconds
+     */
+    public Membership(Member self, ScheduledExecutorService timer, long suspicionTimeout) {
+        this.self = self;
+        this.timer = timer;
+        this.suspicionTimeout = suspicionTimeout;
+
+        members.put(self.getName(), self);
+        spread(self);
+    }
+
+    /**
+     * Finds a member by name.
+     *
+     * @param name the member's name
+     * @return the member, or null if nobody by that name has been heard of
+     */
+    public synchronized Member find(String name) {
+        return members.get(name);
+    }
+
+    /**
+     * Gets the most recent actor heard of that goes by this actor's name, but at a different address.
+     *
+     * @return the other actor, or null if there's been no sign of one
+     */
+    public synchronized Member impostor() {
+        return impostor;
+    }
+
+    /**
+     * Gets everything known about the cast, for bringing a newcomer up to speed.
+     *
+     * @return every known member
+     */
+    public synchronized List<Member> snapshot() {
+        return new ArrayList<>(members.values());
+    }
+
+    /**
+     * Picks the freshest news to attach to an outgoing message, and counts it as passed on.
+     *
+     * @return up to {@link #PIGGYBACK} members, or an empty list if there's no news
+     */
+    public synchronized List<Member> piggyback() {
+        if (rumors.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        ArrayList<Map.Entry<String, Integer>> freshest = new ArrayList<>(rumors.entrySet());
+        freshest.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+
+        ArrayList<Member> news = new ArrayList<>(Math.min(PIGGYBACK, freshest.size()));
+        for (Map.Entry<String, Integer> rumor : freshest.subList(0, Math.min(PIGGYBACK, freshest.size()))) {
+            news.add(members.get(rumor.getKey()));
+            if (rumor.getValue() <= 1) {
+                rumors.remove(rumor.getKey());
+            } else {
+                rumors.put(rumor.getKey(), rumor.getValue() - 1);
+            }
+        }
+        return news;
+    }
+
+    /**
+     * Takes in news heard from another actor.
+     *
+     * @param news what the other actor believes
+     */
+    public void apply(List<Member> news) {
+        for (Member update : news) {
+            Member changed = merge(update);
+            if (changed != null) {
+                fire(changed);
+            }
+        }
+    }
+
+    /**
+     * Starts suspecting a member, such as after losing its channel.
+     *
+     * @param name the member's name
+     */
+    public void suspect(String name) {
+        Member suspected;
+        synchronized (this) {
+            Member current = members.get(name);
+            if (current == null || current.getState() != Member.State.alive) {
+                return;
+            }
+            suspected = merge(current.with(Member.State.suspect, current.getIncarnation()));
+        }
+
+        if (suspected != null) {
+            fire(suspected);
+            timer.schedule(() -> condemn(suspected), suspicionTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Declares a suspect dead, unless it has refuted the suspicion in the meantime.
+     *
+     * @param suspected the suspicion being timed out
+     */
+    private void condemn(Member suspected) {
+        Member dead = null;
+        synchronized (this) {
+            Member current = members.get(suspected.getName());
+            if (current != null && current.getState() == Member.State.suspect
+                    && current.getIncarnation() == suspected.getIncarnation()) {
+                dead = merge(current.with(Member.State.dead, current.getIncarnation()));
+            }
+        }
+
+        if (dead != null) {
+            fire(dead);
+        }
+    }
+
+    /**
+     * Folds one piece of news into what's known, refuting it if it's about this actor. News of a live actor
+     * with this actor's name at another address isn't about this actor at all, and is kept aside instead.
+     *
+     * @param update the news
+     * @return the news if it changed anything about another actor, otherwise null
+     */
+    private synchronized Member merge(Member update) {
+        if (update.getName().equals(self.getName())) {
+            if (update.getState() == Member.State.alive
+                    && (!update.getHost().equals(self.getHost()) || update.getPort() != self.getPort())) {
+                impostor = update;
+                return null;
+            }
+            if (update.getState() != Member.State.alive && update.getIncarnation() >= self.getIncarnation()) {
+                self = self.with(Member.State.alive, update.getIncarnation() + 1);
+                members.put(self.getName(), self);
+                spread(self);
+            }
+            return null;
+        }
+
+        if (!update.supersedes(members.get(update.getName()))) {
+            return null;
+        }
+        members.put(update.getName(), update);
+        spread(update);
+        return update;
+    }
+
+    /**
+     * Queues news about a member to be passed on. Must hold this.
+     *
+     * @param member the member
+     */
+    private void spread(Member member) {
+        int rounds = 32 - Integer.numberOfLeadingZeros(members.size());
+        rounds = Math.max(rounds, 1);
+        rumors.put(member.getName(), LAMBDA * rounds);
+    }
+
+    private void fire(Member member) {
+        for (MemberListener listener : listeners) {
+            listener.changed(member);
+        }
+    }
+
+    /**
+     * Starts telling a listener when news about a member is taken on.
+     *
+     * @param listener the listener
+     */
+    public void addListener(MemberListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops telling a listener when news about a member is taken on.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(MemberListener listener) {
+        listeners.remove(listener);
+    }
+}
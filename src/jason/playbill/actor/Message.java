@@ -1,15 +1,89 @@
 package jason.playbill.actor;
 
+import io.netty.util.Recycler;
+
 import java.io.Serializable;
+import java.util.List;
 
-//todo: label
+/**
+ * A message between actors.
+ *
+ * Messages built with {@link #pooled} come from a per-thread pool, and go back to it once they've been encoded
+ * or handled, so the steady-state send path doesn't allocate any. A pooled message must only be written to one
+ * channel, and mustn't be touched after it's been written.
+ */
 public class Message implements Serializable {
+    /**
+     * The pool that {@link #pooled} takes messages from.
+     */
+    private static final Recycler<Message> RECYCLER = new Recycler<Message>() {
+        @Override
+        protected Message newObject(Handle<Message> handle) {
+            return new Message(handle);
+        }
+    };
+
+    /**
+     * Where the message goes back to when it's done with, or null for messages that aren't pooled.
+     */
+    private final transient Recycler.Handle<Message> handle;
+
     //todo: label
     Contact source;
     //todo: label
     MessageType messageType;
     //todo: label
     Object data;
+    /**
+     * Ties a confirmation to the message it confirms. Zero for messages that don't expect one.
+     */
+    int correlationId;
+    /**
+     * Membership news riding along with the message, or null if there isn't any.
+     */
+    List<Member> gossip;
+
+    /**
+     * Instantiates a new Message that isn't pooled.
+     */
+    public Message() {
+        this.handle = null;
+    }
+
+    private Message(Recycler.Handle<Message> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * Takes a message from the pool.
+     *
+     * @param source      the sender
+     * @param messageType the message type
+     * @param data        the data
+     * @return the message
+     */
+    static Message pooled(Contact source, MessageType messageType, Object data) {
+        Message message = RECYCLER.get();
+        message.source = source;
+        message.messageType = messageType;
+        message.data = data;
+        return message;
+    }
+
+    /**
+     * Clears the message and returns it to the pool. Does nothing for messages that aren't pooled.
+     */
+    void recycle() {
+        if (handle == null) {
+            return;
+        }
+        source = null;
+        messageType = null;
+        data = null;
+        correlationId = 0;
+        gossip = null;
+        handle.recycle(this);
+    }
 
     //todo: label
     public Contact getSource() {
@@ -41,12 +115,52 @@ public class Message implements Serializable {
         this.data = data;
     }
 
+    /**
+     * Gets the ID that pairs a request with its confirmation.
+     *
+     * @return the correlation ID, or {@link PendingReplies#UNCORRELATED} if there's no pairing
+     */
+    public int getCorrelationId() {
+        return correlationId;
+    }
+
+    /**
+     * Sets the ID that pairs a request with its confirmation.
+     *
+     * @param correlationId the correlation ID
+     */
+    public void setCorrelationId(int correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    /**
+     * Gets the membership news riding along on the message.
+     *
+     * @return the news, or null if there's none
+     */
+    public List<Member> getGossip() {
+        return gossip;
+    }
+
+    /**
+     * Sets the membership news riding along on the message.
+     *
+     * @param gossip the news
+     */
+    public void setGossip(List<Member> gossip) {
+        this.gossip = gossip;
+    }
+
     //todo: label
     enum MessageType {
         dm,
         rollcall,
         confirmation,
         nextCue,
-        empty
+        empty,
+        heartbeat,
+        ring,
+        ringReady,
+        ringSwitch
     }
 }
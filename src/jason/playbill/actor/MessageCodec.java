@@ -0,0 +1,288 @@
+package jason.playbill.actor;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import jason.playbill.playscript.LineRef;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The compact binary wire format for {@link Message}s.
+ *
+ * Every frame is laid out like so:
+ * <pre>
+ *     int     length of everything after this field
+ *     byte    message type (ordinal of {@link Message.MessageType})
+ *     int     correlation ID
+ *     byte    source tag (0 = none, 1 = inline contact, 2 = inline contact and handle, 3 = handle)
+ *       short + utf8    source name         (tags 1 and 2)
+ *       short + utf8    source color        (tags 1 and 2)
+ *       short + utf8    source host         (tags 1 and 2)
+ *       int             source port         (tags 1 and 2)
+ *       short           source handle       (tags 2 and 3; see {@link ContactTable})
+ *     byte    data tag (0 = none, 1 = text, 2 = script line)
+ *       int + utf8      text                (tag 1)
+ *       short + utf8    scene               (tag 2; see {@link LineRef})
+ *       short + utf8    cue                 (tag 2)
+ *       short           line number         (tag 2)
+ *     short   gossip count, then for each member:
+ *       short + utf8    name
+ *       short + utf8    color
+ *       short + utf8    host
+ *       int             port
+ *       int             incarnation
+ *       byte            state (ordinal of {@link Member.State})
+ * </pre>
+ * Strings are written straight into the target buffer, and their lengths are patched in afterwards.
+ */
+final class MessageCodec {
+    /**
+     * The largest frame either side will accept, length field excluded.
+     */
+    static final int MAX_FRAME_LENGTH = 64 * 1024;
+
+    private static final byte NONE = 0;
+    private static final byte CONTACT = 1;
+    private static final byte INTRODUCTION = 2;
+    private static final byte HANDLE = 3;
+    private static final byte TEXT = 1;
+    private static final byte LINE = 2;
+
+    private static final Message.MessageType[] TYPES = Message.MessageType.values();
+    private static final Member.State[] STATES = Member.State.values();
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Encodes a message into a fresh buffer from the given allocator.
+     *
+     * @param message   the message to encode
+     * @param allocator the allocator to take the buffer from
+     * @return the encoded frame, length field included
+     */
+    static ByteBuf encode(Message message, ByteBufAllocator allocator) {
+        return encode(message, allocator, null);
+    }
+
+    /**
+     * Encodes a message into a fresh buffer from the given allocator, naming contacts by their handles where
+     * the table has them.
+     *
+     * @param message   the message to encode
+     * @param allocator the allocator to take the buffer from
+     * @param contacts  the contacts the frame can name by handle, or null to spell the source out
+     * @return the encoded frame, length field included
+     */
+    static ByteBuf encode(Message message, ByteBufAllocator allocator, ContactTable contacts) {
+        ByteBuf out = allocator.ioBuffer();
+        try {
+            write(message, out, contacts);
+            return out;
+        } catch (RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a whole frame, length field included, onto the end of a buffer, with the source spelled out.
+     *
+     * @param message the message to write
+     * @param out     the buffer to write to
+     */
+    static void write(Message message, ByteBuf out) {
+        write(message, out, null);
+    }
+
+    /**
+     * Writes a whole frame, length field included, onto the end of a buffer.
+     *
+     * @param message  the message to write
+     * @param out      the buffer to write to
+     * @param contacts the contacts already introduced over the channel the frame is for, or null if the frame
+     *                 isn't for any one channel
+     */
+    static void write(Message message, ByteBuf out, ContactTable contacts) {
+        int start = out.writerIndex();
+        out.writeInt(0);
+
+        out.writeByte(message.getMessageType().ordinal());
+        out.writeInt(message.getCorrelationId());
+
+        Contact source = message.getSource();
+        int handle = source == null || contacts == null ? -1 : contacts.handleOf(source);
+        int introduced = -1;
+        if (source == null) {
+            out.writeByte(NONE);
+        } else if (handle >= 0) {
+            out.writeByte(HANDLE);
+            out.writeShort(handle);
+        } else {
+            introduced = contacts == null ? -1 : contacts.reserve(source);
+            out.writeByte(introduced >= 0 ? INTRODUCTION : CONTACT);
+            writeShortString(out, source.getName());
+            writeShortString(out, source.getColor());
+            writeShortString(out, source.getHost());
+            out.writeInt(source.getPort());
+            if (introduced >= 0) {
+                out.writeShort(introduced);
+            }
+        }
+
+        Object data = message.getData();
+        if (data == null) {
+            out.writeByte(NONE);
+        } else if (data instanceof String) {
+            out.writeByte(TEXT);
+            int lengthIndex = out.writerIndex();
+            out.writeInt(0);
+            out.setInt(lengthIndex, ByteBufUtil.writeUtf8(out, (String) data));
+        } else if (data instanceof LineRef) {
+            LineRef line = (LineRef) data;
+            if (line.getLine() < 0 || line.getLine() > 0xFFFF) {
+                throw new EncoderException("Line number " + line.getLine() + " doesn't fit in a short field");
+            }
+            out.writeByte(LINE);
+            writeShortString(out, line.getScene());
+            writeShortString(out, line.getCue());
+            out.writeShort(line.getLine());
+        } else {
+            throw new EncoderException("Can't encode message data of type " + data.getClass().getName());
+        }
+
+        List<Member> gossip = message.getGossip();
+        if (gossip == null) {
+            out.writeShort(0);
+        } else {
+            if (gossip.size() > 0xFFFF) {
+                throw new EncoderException("Too much gossip for one frame: " + gossip.size() + " members");
+            }
+            out.writeShort(gossip.size());
+            for (Member member : gossip) {
+                writeShortString(out, member.getName());
+                writeShortString(out, member.getColor());
+                writeShortString(out, member.getHost());
+                out.writeInt(member.getPort());
+                out.writeInt(member.getIncarnation());
+                out.writeByte(member.getState().ordinal());
+            }
+        }
+
+        int length = out.writerIndex() - start - Integer.BYTES;
+        if (length > MAX_FRAME_LENGTH) {
+            throw new TooLongFrameException("Frame of " + length + " bytes is over the limit of " + MAX_FRAME_LENGTH);
+        }
+        out.setInt(start, length);
+
+        // Only now is the introduction sure to go out, so only now can later frames count on it.
+        if (introduced >= 0) {
+            contacts.commit(source, introduced);
+        }
+    }
+
+    /**
+     * Reads a message back out of a single frame, length field excluded. The message comes from the pool, so
+     * whoever handles it last should {@link Message#recycle() recycle} it unless it's kept.
+     *
+     * @param in the frame
+     * @return the decoded message
+     */
+    static Message read(ByteBuf in) {
+        return read(in, null);
+    }
+
+    /**
+     * Reads a message back out of a single frame, length field excluded, resolving its source's handle if it
+     * has one. The message comes from the pool, so whoever handles it last should
+     * {@link Message#recycle() recycle} it unless it's kept.
+     *
+     * @param in       the frame
+     * @param contacts the contacts already introduced over the channel the frame came in on
+     * @return the decoded message
+     */
+    static Message read(ByteBuf in, ContactTable contacts) {
+        Message message = Message.pooled(null, null, null);
+
+        int type = in.readUnsignedByte();
+        if (type >= TYPES.length) {
+            throw new CorruptedFrameException("Unknown message type " + type);
+        }
+        message.setMessageType(TYPES[type]);
+        message.setCorrelationId(in.readInt());
+
+        byte sourceTag = in.readByte();
+        if (sourceTag == CONTACT || sourceTag == INTRODUCTION) {
+            Contact source = new Contact();
+            source.setName(readString(in, in.readUnsignedShort()));
+            source.setColor(readString(in, in.readUnsignedShort()));
+            source.setHost(readString(in, in.readUnsignedShort()));
+            source.setPort(in.readInt());
+            if (sourceTag == INTRODUCTION) {
+                int handle = in.readUnsignedShort();
+                if (contacts != null) {
+                    contacts.learn(handle, source);
+                }
+            }
+            message.setSource(source);
+        } else if (sourceTag == HANDLE) {
+            int handle = in.readUnsignedShort();
+            if (contacts == null) {
+                throw new CorruptedFrameException("Contact handle " + handle + " outside of any channel");
+            }
+            message.setSource(contacts.resolve(handle));
+        }
+
+        byte dataTag = in.readByte();
+        if (dataTag == TEXT) {
+            message.setData(readString(in, in.readInt()));
+        } else if (dataTag == LINE) {
+            String scene = readString(in, in.readUnsignedShort());
+            String cue = readString(in, in.readUnsignedShort());
+            message.setData(new LineRef(scene, cue, in.readUnsignedShort()));
+        }
+
+        int gossipCount = in.readUnsignedShort();
+        if (gossipCount > 0) {
+            ArrayList<Member> gossip = new ArrayList<>(gossipCount);
+            for (int i = 0; i < gossipCount; i++) {
+                String name = readString(in, in.readUnsignedShort());
+                String color = readString(in, in.readUnsignedShort());
+                String host = readString(in, in.readUnsignedShort());
+                int port = in.readInt();
+                int incarnation = in.readInt();
+                int state = in.readUnsignedByte();
+                if (state >= STATES.length) {
+                    throw new CorruptedFrameException("Unknown member state " + state);
+                }
+                gossip.add(new Member(name, color, host, port, incarnation, STATES[state]));
+            }
+            message.setGossip(gossip);
+        }
+
+        return message;
+    }
+
+    private static void writeShortString(ByteBuf out, String value) {
+        int lengthIndex = out.writerIndex();
+        out.writeShort(0);
+        int length = ByteBufUtil.writeUtf8(out, value);
+        if (length > 0xFFFF) {
+            throw new EncoderException("String of " + length + " bytes is too long for a short field");
+        }
+        out.setShort(lengthIndex, length);
+    }
+
+    private static String readString(ByteBuf in, int length) {
+        if (length < 0 || length > in.readableBytes()) {
+            throw new CorruptedFrameException("String of " + length + " bytes runs past the end of the frame");
+        }
+        return in.readCharSequence(length, StandardCharsets.UTF_8).toString();
+    }
+}
@@ -0,0 +1,36 @@
+package jason.playbill.actor;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+/**
+ * Splits incoming bytes into length-prefixed frames and reads each one back into a {@link Message}.
+ */
+class MessageDecoder extends LengthFieldBasedFrameDecoder {
+    /**
+     * Instantiates a new Message decoder.
+     *
+     * @param maxFrameLength the longest frame to accept, not counting its length field
+     */
+    MessageDecoder(int maxFrameLength) {
+        super(maxFrameLength, 0, Integer.BYTES, 0, Integer.BYTES);
+    }
+
+    /**
+     * Reads a frame into a message once the whole of it has arrived.
+     */
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        ByteBuf frame = (ByteBuf) super.decode(ctx, in);
+        if (frame == null) {
+            return null;
+        }
+
+        try {
+            return MessageCodec.read(frame, ContactTable.of(ctx.channel()));
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package jason.playbill.actor;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+/**
+ * Writes outgoing {@link Message}s in the {@link MessageCodec} binary format.
+ * Buffers that have already been encoded pass through untouched, and pooled messages go back to the pool
+ * once they're encoded.
+ */
+class MessageEncoder extends MessageToByteEncoder<Message> {
+    /**
+     * Instantiates a new Message encoder.
+     */
+    MessageEncoder() {
+        super(Message.class);
+    }
+
+    /**
+     * Writes a message, naming contacts by handle where the channel already knows them, and recycles it.
+     */
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Message msg, ByteBuf out) {
+        MessageCodec.write(msg, out, ContactTable.of(ctx.channel()));
+        msg.recycle();
+    }
+}
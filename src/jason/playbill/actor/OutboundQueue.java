@@ -0,0 +1,267 @@
+package jason.playbill.actor;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue of frames waiting to be written to a contact's channel.
+ *
+ * Frames only leave the queue while the channel is writable, that is while Netty's outbound buffer is
+ * under its high water mark, so a stalled peer can't make the buffer grow without bound. Once the queue
+ * itself is full, the {@link OverflowPolicy} decides what happens to the next frame.
+ *
+ * There is one queue per channel, shared by every contact entry for that channel. The capacity and
+ * policy are read from the {@code playbill.outbound.capacity} (default 1024) and
+ * {@code playbill.outbound.policy} (default {@code block}) system properties.
+ */
+public class OutboundQueue {
+    /**
+     * What to do with a new frame when the queue is already full.
+     */
+    public enum OverflowPolicy {
+        block,          // Wait for room. Falls back to fail on the channel's own event loop or in a mailbox event.
+        dropOldest,     // Make room by failing the frame that has been waiting the longest.
+        fail            // Fail the new frame.
+    }
+
+    /**
+     * The channel attribute the queue is kept in.
+     */
+    private static final AttributeKey<OutboundQueue> KEY = AttributeKey.valueOf(OutboundQueue.class, "queue");
+
+    /**
+     * The channel the frames are written to.
+     */
+    private final Channel channel;
+    /**
+     * The most frames that may wait at once.
+     */
+    private final int capacity;
+    /**
+     * What to do with a new frame when the queue is full.
+     */
+    private final OverflowPolicy policy;
+
+    /**
+     * The frames waiting to be written, oldest first. Guarded by lock.
+     */
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    /**
+     * Guards the queue and its state.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Signalled whenever room is made in the queue, or the channel closes.
+     */
+    private final Condition notFull = lock.newCondition();
+    /**
+     * Whether the channel has closed. Guarded by lock.
+     */
+    private boolean closed;
+    /**
+     * How many frames have been dropped or refused so far. Guarded by lock.
+     */
+    private long overflows;
+
+    /**
+     * Instantiates a new Outbound queue.
+     *
+     * @param channel  the channel to write to
+     * @param capacity the most frames to hold at once
+     * @param policy   what to do when full
+     */
+    OutboundQueue(Channel channel, int capacity, OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("An outbound queue needs room for at least one frame.");
+        }
+        this.channel = channel;
+        this.capacity = capacity;
+        this.policy = policy;
+
+        channel.closeFuture().addListener(future -> abandon());
+    }
+
+    /**
+     * Gets the queue for a channel, creating it from the system properties if it doesn't exist yet.
+     *
+     * @param channel the channel
+     * @return the channel's queue
+     */
+    static OutboundQueue of(Channel channel) {
+        OutboundQueue queue = channel.attr(KEY).get();
+        if (queue != null) {
+            return queue;
+        }
+
+        queue = new OutboundQueue(channel,
+                Integer.getInteger("playbill.outbound.capacity", 1024),
+                OverflowPolicy.valueOf(System.getProperty("playbill.outbound.policy", OverflowPolicy.block.name())));
+        OutboundQueue existing = channel.attr(KEY).setIfAbsent(queue);
+        return existing == null ? queue : existing;
+    }
+
+    /**
+     * Gets the queue for a channel, if one has been created.
+     *
+     * @param channel the channel
+     * @return the channel's queue, or null
+     */
+    static OutboundQueue peek(Channel channel) {
+        return channel.attr(KEY).get();
+    }
+
+    /**
+     * Queues a message or an already-encoded frame to be written.
+     * Ownership of the frame passes to the queue, which releases it if it is never written.
+     *
+     * @param frame the message or frame
+     * @return a future that completes once the frame has been written, or fails if it never will be
+     */
+    public ChannelFuture offer(Object frame) {
+        ChannelPromise promise = channel.newPromise();
+        boolean wasEmpty;
+
+        lock.lock();
+        try {
+            while (!closed && queue.size() >= capacity) {
+                if (policy == OverflowPolicy.dropOldest) {
+                    Entry dropped = queue.poll();
+                    overflows++;
+                    dropped.fail(new QueueOverflowException("Dropped to make room on a full outbound queue."));
+                } else if (policy == OverflowPolicy.block && !channel.eventLoop().inEventLoop()
+                        && !Mailbox.isDraining()) {
+                    try {
+                        notFull.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return fail(frame, promise, e);
+                    }
+                } else {
+                    overflows++;
+                    return fail(frame, promise,
+                            new QueueOverflowException("The outbound queue is full at " + capacity + " frames."));
+                }
+            }
+
+            if (closed) {
+                return fail(frame, promise, new ClosedChannelException());
+            }
+
+            wasEmpty = queue.isEmpty();
+            queue.add(new Entry(frame, promise));
+        } finally {
+            lock.unlock();
+        }
+
+        // A drain that's already pending or stalled on writability will pick this frame up too.
+        if (wasEmpty) {
+            channel.eventLoop().execute(this::drain);
+        }
+        return promise;
+    }
+
+    /**
+     * Writes queued frames for as long as the channel stays writable. Runs on the channel's event loop,
+     * whenever a frame lands in an empty queue and whenever the channel becomes writable again.
+     */
+    void drain() {
+        boolean wrote = false;
+
+        while (channel.isWritable()) {
+            Entry entry;
+            lock.lock();
+            try {
+                entry = queue.poll();
+                if (entry == null) {
+                    break;
+                }
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+
+            channel.write(entry.frame, entry.promise);
+            wrote = true;
+        }
+
+        if (wrote) {
+            channel.flush();
+        }
+    }
+
+    /**
+     * Fails everything still waiting, and wakes anyone blocked on room, once the channel has closed.
+     */
+    private void abandon() {
+        lock.lock();
+        try {
+            closed = true;
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                entry.fail(new ClosedChannelException());
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ChannelFuture fail(Object frame, ChannelPromise promise, Throwable cause) {
+        ReferenceCountUtil.release(frame);
+        return promise.setFailure(cause);
+    }
+
+    /**
+     * Gets how many frames are waiting to be written.
+     *
+     * @return the queue depth
+     */
+    public int depth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets how many frames have been dropped or refused because the queue was full.
+     *
+     * @return the overflow count
+     */
+    public long overflows() {
+        lock.lock();
+        try {
+            return overflows;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A frame and the promise for its write.
+     */
+    private static class Entry {
+        final Object frame;
+        final ChannelPromise promise;
+
+        Entry(Object frame, ChannelPromise promise) {
+            this.frame = frame;
+            this.promise = promise;
+        }
+
+        void fail(Throwable cause) {
+            ReferenceCountUtil.release(frame);
+            promise.tryFailure(cause);
+        }
+    }
+}
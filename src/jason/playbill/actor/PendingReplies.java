@@ -0,0 +1,154 @@
+package jason.playbill.actor;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The messages sent over a channel that are still waiting on a confirmation, by correlation ID.
+ *
+ * Each request gets a correlation ID that is unique within the JVM, and the other side's confirmation
+ * carries the same ID back. The matching future then completes with that confirmation. If no
+ * confirmation arrives within the timeout, or the channel closes first, the future fails instead.
+ * The timeout is read from the {@code playbill.reply.timeout} system property, in milliseconds (default 5000).
+ */
+public class PendingReplies {
+    /**
+     * The correlation ID for messages that don't expect a confirmation.
+     */
+    static final int UNCORRELATED = 0;
+
+    /**
+     * The channel attribute the table is kept in.
+     */
+    private static final AttributeKey<PendingReplies> KEY = AttributeKey.valueOf(PendingReplies.class, "replies");
+    /**
+     * The last correlation ID handed out in this JVM.
+     */
+    private static final AtomicInteger nextId = new AtomicInteger();
+    /**
+     * How long to wait on a confirmation, in milliseconds.
+     */
+    private static final long TIMEOUT = Long.getLong("playbill.reply.timeout", 5000);
+
+    /**
+     * The channel the requests went out on.
+     */
+    private final Channel channel;
+    /**
+     * The futures still waiting on a confirmation, by correlation ID.
+     */
+    private final ConcurrentHashMap<Integer, CompletableFuture<Message>> pending = new ConcurrentHashMap<>();
+
+    private PendingReplies(Channel channel) {
+        this.channel = channel;
+        channel.closeFuture().addListener(future -> abandon());
+    }
+
+    /**
+     * Gets the pending replies for a channel, creating the table if it doesn't exist yet.
+     *
+     * @param channel the channel
+     * @return the channel's table
+     */
+    static PendingReplies of(Channel channel) {
+        PendingReplies replies = channel.attr(KEY).get();
+        if (replies != null) {
+            return replies;
+        }
+
+        replies = new PendingReplies(channel);
+        PendingReplies existing = channel.attr(KEY).setIfAbsent(replies);
+        return existing == null ? replies : existing;
+    }
+
+    /**
+     * Gets the pending replies for a channel, if the table has been created.
+     *
+     * @param channel the channel
+     * @return the channel's table, or null
+     */
+    static PendingReplies peek(Channel channel) {
+        return channel.attr(KEY).get();
+    }
+
+    /**
+     * Gives a message a fresh correlation ID, and starts waiting on its confirmation.
+     *
+     * @param message the message about to be sent
+     * @return a future for the confirmation
+     */
+    CompletableFuture<Message> expect(Message message) {
+        int id = nextId.incrementAndGet();
+        if (id == UNCORRELATED) {
+            id = nextId.incrementAndGet();
+        }
+        message.setCorrelationId(id);
+
+        CompletableFuture<Message> reply = new CompletableFuture<>();
+        pending.put(id, reply);
+
+        int expected = id;
+        ScheduledFuture<?> timeout = channel.eventLoop().schedule(() -> {
+            if (pending.remove(expected, reply)) {
+                reply.completeExceptionally(new TimeoutException(
+                        "No confirmation for message " + expected + " within " + TIMEOUT + "ms."));
+            }
+        }, TIMEOUT, TimeUnit.MILLISECONDS);
+        reply.whenComplete((confirmation, failure) -> timeout.cancel(false));
+
+        if (!channel.isOpen()) {
+            abandon();
+        }
+        return reply;
+    }
+
+    /**
+     * Hands a confirmation to whoever is waiting on it.
+     *
+     * @param confirmation the confirmation
+     * @return false if nobody was waiting on it
+     */
+    boolean complete(Message confirmation) {
+        CompletableFuture<Message> reply = pending.remove(confirmation.getCorrelationId());
+        if (reply == null) {
+            return false;
+        }
+        return reply.complete(confirmation);
+    }
+
+    /**
+     * Stops waiting on a message's confirmation, such as when the message couldn't be written.
+     *
+     * @param id    the message's correlation ID
+     * @param cause why the confirmation will never come
+     */
+    void fail(int id, Throwable cause) {
+        CompletableFuture<Message> reply = pending.remove(id);
+        if (reply != null) {
+            reply.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Gets how many messages are still waiting on a confirmation.
+     *
+     * @return the count
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    private void abandon() {
+        for (Integer id : pending.keySet()) {
+            fail(id, new ClosedChannelException());
+        }
+    }
+}
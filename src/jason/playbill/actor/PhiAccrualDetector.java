@@ -0,0 +1,128 @@
+package jason.playbill.actor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A phi-accrual failure detector, after Hayashibara et al.
+ *
+ * Rather than a yes/no timeout, it keeps a window of recent heartbeat intervals and works out phi, a
+ * measure of how unlikely the current silence is given that history. The contact is given up on once
+ * phi passes the threshold; a threshold of 8 means roughly a one in a hundred million chance of being wrong.
+ *
+ * Other traffic counts as a sign of life, but only the silences that end in a heartbeat go in the window, so a
+ * burst of dialogue doesn't teach the detector to expect frames every few milliseconds.
+ */
+public class PhiAccrualDetector implements FailureDetector {
+    /**
+     * How many intervals to remember.
+     */
+    private static final int WINDOW = 100;
+
+    /**
+     * The phi at which to give up on a contact.
+     */
+    private final double threshold;
+    /**
+     * The smallest standard deviation to assume, so that perfectly regular heartbeats don't make phi spike
+     * the moment one is a little late.
+     */
+    private final double minStdDev;
+    /**
+     * The heartbeat interval, in nanoseconds. The mean is never taken to be shorter.
+     */
+    private final long expected;
+
+    /**
+     * The most recent silences that a heartbeat broke, in nanoseconds, as a ring.
+     */
+    private final long[] intervals = new long[WINDOW];
+    /**
+     * How many intervals the window holds.
+     */
+    private int count;
+    /**
+     * Where in the window the next interval goes.
+     */
+    private int next;
+    /**
+     * The sum of the intervals in the window.
+     */
+    private double sum;
+    /**
+     * The sum of the squares of the intervals in the window.
+     */
+    private double squares;
+    /**
+     * When anything last arrived from the contact, from {@link System#nanoTime()}.
+     */
+    private long last = System.nanoTime();
+
+    /**
+     * Instantiates a new Phi accrual detector.
+     *
+     * @param interval  the expected heartbeat interval, in milliseconds
+     * @param threshold the phi at which to give up on a contact
+     */
+    public PhiAccrualDetector(long interval, double threshold) {
+        this.threshold = threshold;
+
+        this.expected = TimeUnit.MILLISECONDS.toNanos(interval);
+        this.minStdDev = expected / 10.0;
+
+        // Seed the window with the expected interval, so that the first few heartbeats aren't judged on nothing.
+        record(expected - expected / 4);
+        record(expected + expected / 4);
+    }
+
+    @Override
+    public void heartbeat(long now) {
+        record(now - last);
+        last = now;
+    }
+
+    @Override
+    public void received(long now) {
+        last = now;
+    }
+
+    @Override
+    public boolean isAvailable(long now) {
+        return phi(now) < threshold;
+    }
+
+    /**
+     * Works out phi for the current silence.
+     *
+     * @param now the current time, from {@link System#nanoTime()}
+     * @return phi
+     */
+    public double phi(long now) {
+        // Heartbeats only go out once the other side has had nothing else to send for an interval, so silences
+        // shorter than that are never a sign of trouble, whatever the window says.
+        double mean = Math.max(sum / count, expected);
+        double stdDev = Math.max(Math.sqrt(Math.max(squares / count - mean * mean, 0)), minStdDev);
+
+        // Logistic approximation of the normal distribution's tail.
+        double y = (now - last - mean) / stdDev;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (now - last > mean) {
+            return -Math.log10(e / (1.0 + e));
+        }
+        return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    private void record(long interval) {
+        if (count == WINDOW) {
+            long dropped = intervals[next];
+            sum -= dropped;
+            squares -= (double) dropped * dropped;
+        } else {
+            count++;
+        }
+
+        intervals[next] = interval;
+        next = (next + 1) % WINDOW;
+        sum += interval;
+        squares += (double) interval * interval;
+    }
+}
@@ -0,0 +1,10 @@
+package jason.playbill.actor;
+
+/**
+ * Signals that a frame was dropped or refused because too many were already waiting to be written.
+ */
+public class QueueOverflowException extends Exception{
+    public QueueOverflowException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,99 @@
+package jason.playbill.actor;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How an actor keeps trying to reach another actor after a connection attempt fails.
+ *
+ * Delays grow exponentially from the base delay up to the max delay, and each one is spread by a random
+ * jitter so that actors who lost each other at the same moment don't all come knocking at once.
+ */
+public class ReconnectPolicy {
+    /**
+     * The delay before the first retry, in milliseconds.
+     */
+    private final long baseDelay;
+    /**
+     * The longest delay between retries, in milliseconds.
+     */
+    private final long maxDelay;
+    /**
+     * The most connection attempts to make in total, the first one included.
+     */
+    private final int maxAttempts;
+    /**
+     * The fraction of each delay that may be randomly added or taken away.
+     */
+    private final double jitter;
+
+    /**
+     * Instantiates a new Reconnect policy.
+     *
+     * @param baseDelay   the delay before the first retry, in milliseconds
+     * @param maxDelay    the longest delay between retries, in milliseconds
+     * @param maxAttempts the most connection attempts to make in total, the first one included
+     * @param jitter      the fraction of each delay to randomly spread it by, from 0 to 1
+     */
+    public ReconnectPolicy(long baseDelay, long maxDelay, int maxAttempts, double jitter) {
+        if (baseDelay < 0 || maxDelay < baseDelay || maxAttempts < 1 || jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Invalid reconnect policy.");
+        }
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.maxAttempts = maxAttempts;
+        this.jitter = jitter;
+    }
+
+    /**
+     * A policy that makes a single attempt and never retries.
+     *
+     * @return the policy
+     */
+    public static ReconnectPolicy once() {
+        return new ReconnectPolicy(0, 0, 1, 0);
+    }
+
+    /**
+     * The policy used for finding lost or late cast members: eight attempts, starting at a quarter of a
+     * second and backing off to ten seconds, with 20% jitter.
+     *
+     * @return the policy
+     */
+    public static ReconnectPolicy standard() {
+        return new ReconnectPolicy(250, 10_000, 8, 0.2);
+    }
+
+    /**
+     * Checks whether another attempt should be made.
+     *
+     * @param attempt the number of the attempt about to be made, starting at 1 for the first retry
+     * @return whether to make it
+     */
+    public boolean allows(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    /**
+     * Gets how long to wait before a retry.
+     *
+     * @param attempt the number of the retry, starting at 1
+     * @return the delay, in milliseconds
+     */
+    public long delay(int attempt) {
+        long delay = maxDelay;
+        if (attempt - 1 < Long.numberOfLeadingZeros(Math.max(baseDelay, 1)) - 1) {
+            delay = Math.min(maxDelay, baseDelay << (attempt - 1));
+        }
+
+        if (jitter == 0 || delay == 0) {
+            return delay;
+        }
+        long spread = (long) (delay * jitter);
+        return Math.max(0, delay - spread + ThreadLocalRandom.current().nextLong(2 * spread + 1));
+    }
+
+    @Override
+    public String toString() {
+        return "ReconnectPolicy " + baseDelay + "-" + maxDelay + "ms x" + maxAttempts;
+    }
+}
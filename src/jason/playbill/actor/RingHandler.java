@@ -0,0 +1,493 @@
+package jason.playbill.actor;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import jason.playbill.actor.logger.ActorLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Moves a channel's traffic onto a pair of {@link MappedRing}s once both ends turn out to be on the same machine.
+ *
+ * The channel itself stays open the whole time; it's how the rings get set up, and closing it is still how a
+ * contact leaves. Each side creates the ring it writes to, and offers its path with a {@code ring} message
+ * over the channel. Nothing moves until the other side answers:
+ * <ol>
+ *     <li>The other side maps the ring and answers with {@code ringReady}. A side that doesn't use rings,
+ *     or can't map this one, never answers, and the channel just stays on the socket.</li>
+ *     <li>The offering side sends {@code ringSwitch} over the socket, and every frame written after that goes
+ *     into the ring instead.</li>
+ *     <li>The other side only starts reading the ring once it has read {@code ringSwitch}, and with it
+ *     everything sent over the socket before, so frames still arrive in the order they were written.</li>
+ * </ol>
+ * A reader thread polls the ring and hands what it finds to the rest of the pipeline on the channel's event
+ * loop, exactly as if it had come off the socket. It only wakes the event loop when the loop has delivered
+ * everything it was handed before, so a busy ring is read without a syscall per batch.
+ *
+ * An offer is only taken up if it comes from a registered contact on this machine, and names the exact file
+ * that contact's ring would have in the ring directory. Anything else is ignored, so the channel stays on the
+ * socket rather than mapping whatever file a peer points at.
+ *
+ * Rings are turned on with {@code -Dplaybill.shm=true}, and only work with the {@link WireFormat#binary binary}
+ * wire format. Their files go in {@code playbill.shm.dir} (default /dev/shm if there is one). How the reader
+ * waits on an empty ring is picked with {@code playbill.shm.wait}.
+ *
+ * While frames are waiting for room in the ring, the channel reports itself unwritable, the same way it would
+ * with a full socket, so an {@link OutboundQueue} holds off. Anything written regardless is held back, up to
+ * {@code playbill.shm.backlog} frames (default 1024); past that, writes fail with a
+ * {@link QueueOverflowException}.
+ */
+class RingHandler extends ChannelDuplexHandler {
+    /**
+     * Whether actors on the same machine should talk through rings.
+     */
+    static final boolean ENABLED = Boolean.getBoolean("playbill.shm");
+
+    /**
+     * How a ring's reader thread waits for frames.
+     */
+    enum WaitStrategy {
+        spin,           // Never sleeps. Lowest latency, but keeps a core busy per ring.
+        park            // Spins briefly, then parks for longer and longer, up to a millisecond.
+    }
+
+    private static final ActorLogger logger = ActorLogger.create(RingHandler.class);
+
+    /**
+     * The directory rings are created in, read from the {@code playbill.shm.dir} system property. Defaults to
+     * /dev/shm where there is one, so the rings never touch a disk.
+     */
+    private static final Path DIRECTORY = Paths.get(System.getProperty("playbill.shm.dir",
+            Files.isDirectory(Paths.get("/dev/shm")) ? "/dev/shm" : System.getProperty("java.io.tmpdir")))
+            .toAbsolutePath().normalize();
+    /**
+     * What every ring's file name looks like.
+     */
+    private static final Pattern NAME = Pattern.compile("playbill-.+-to-.+\\.ring");
+    /**
+     * How reader threads wait, read from the {@code playbill.shm.wait} system property.
+     */
+    private static final WaitStrategy WAIT = WaitStrategy.valueOf(System.getProperty("playbill.shm.wait", "park"));
+
+    private static final int SPINS = 1000;
+    private static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int BATCH = 64;
+    private static final long RETRY = 50;
+    private static final int BACKLOG = Integer.getInteger("playbill.shm.backlog", 1024);
+    /**
+     * Which of the channel's user-defined writability flags says the ring is backed up.
+     */
+    private static final int WRITABILITY = 1;
+
+    /**
+     * Where the ring offered over a channel should be, or null if the channel's contact isn't allowed one.
+     */
+    private final Function<Channel, Path> expected;
+    /**
+     * The handler's context, for writes and reads that don't start on the pipeline.
+     */
+    private ChannelHandlerContext ctx;
+    /**
+     * The ring this side has offered, until the other side says it's ready for it. Only touched on the event loop.
+     */
+    private MappedRing offered;
+    /**
+     * The ring this side writes to, once the other side is reading it. Only touched on the event loop.
+     */
+    private MappedRing outbound;
+    /**
+     * The other side's ring, mapped but not read until the other side switches over to it. Only touched on the
+     * event loop.
+     */
+    private MappedRing inbound;
+    /**
+     * Frames that didn't fit in the ring yet, in order. Only touched on the event loop.
+     */
+    private final ArrayDeque<Pending> backlog = new ArrayDeque<>();
+    /**
+     * Whether a retry of the backlog is already scheduled. Only touched on the event loop.
+     */
+    private boolean retrying;
+    /**
+     * Messages the reader thread has taken off the ring, waiting to be handed to the pipeline.
+     */
+    private final ConcurrentLinkedQueue<Message> arrived = new ConcurrentLinkedQueue<>();
+    /**
+     * Whether a delivery of arrived messages is scheduled or running on the event loop.
+     */
+    private final AtomicBoolean delivering = new AtomicBoolean();
+    /**
+     * The thread reading the other side's ring, once it has started.
+     */
+    private Thread reader;
+    /**
+     * Whether the channel has closed, which stops the reader thread.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Instantiates a new RingHandler.
+     *
+     * @param expected where the ring offered over a channel should be, or null if it shouldn't take one
+     */
+    RingHandler(Function<Channel, Path> expected) {
+        this.expected = expected;
+    }
+
+    /**
+     * Gets the file of the ring one actor writes to another through.
+     *
+     * @param from the writer's address
+     * @param to   the reader's address
+     * @return the ring's file
+     */
+    static Path path(String from, String to) {
+        return DIRECTORY.resolve(("playbill-" + from + "-to-" + to + ".ring").replace(':', '-'));
+    }
+
+    /**
+     * Keeps the context, for the reader thread and for opening the ring later.
+     */
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    /**
+     * Creates this side's ring and offers it to the other side. Does nothing if the ring is already open or
+     * offered. Has to be called on the channel's event loop.
+     *
+     * @param from this actor's address
+     * @param to   the contact's address
+     */
+    void open(String from, String to) {
+        if (outbound != null || offered != null || closed) {
+            return;
+        }
+
+        Path path = path(from, to);
+        try {
+            offered = MappedRing.create(path, MappedRing.CAPACITY);
+        } catch (IOException | RuntimeException e) {
+            logger.actorError("Couldn't create a ring at {}; staying on the socket.", path);
+            logger.trace(e);
+            return;
+        }
+
+        ctx.writeAndFlush(Message.pooled(null, Message.MessageType.ring, path.toString()));
+        logger.actorDebug("Offered the ring at {}.", path);
+    }
+
+    /**
+     * Sends messages and encoded frames through the ring once this side has switched over to it, and everything
+     * else over the socket.
+     */
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (outbound == null || (!(msg instanceof Message) && !(msg instanceof ByteBuf))) {
+            ctx.write(msg, promise);
+            return;
+        }
+
+        // Refused before encoding, so a contact is never marked as introduced by a frame that won't be sent.
+        if (backlog.size() >= BACKLOG) {
+            if (msg instanceof Message) {
+                ((Message) msg).recycle();
+            } else {
+                ((ByteBuf) msg).release();
+            }
+            promise.setFailure(new QueueOverflowException("The ring's backlog is full at " + BACKLOG + " frames."));
+            return;
+        }
+
+        ByteBuf frame;
+        if (msg instanceof Message) {
+            frame = ctx.alloc().buffer();
+            try {
+                MessageCodec.write((Message) msg, frame, ContactTable.of(ctx.channel()));
+                ((Message) msg).recycle();
+            } catch (RuntimeException e) {
+                frame.release();
+                promise.setFailure(e);
+                return;
+            }
+        } else {
+            frame = (ByteBuf) msg;
+        }
+
+        backlog.add(new Pending(frame, promise));
+        drain();
+    }
+
+    /**
+     * Moves as much of the backlog into the ring as fits, and tries again shortly if anything is left over.
+     */
+    private void drain() {
+        Pending next;
+        while ((next = backlog.peek()) != null && outbound.offer(next.frame)) {
+            backlog.poll();
+            next.frame.release();
+            next.promise.trySuccess();
+        }
+
+        setWritable(backlog.isEmpty());
+        if (!backlog.isEmpty() && !retrying) {
+            retrying = true;
+            ctx.executor().schedule(this::retry, RETRY, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Marks the channel writable or not, depending on whether the ring is keeping up.
+     *
+     * @param writable whether the ring is keeping up
+     */
+    private void setWritable(boolean writable) {
+        ChannelOutboundBuffer buffer = ctx.channel().unsafe().outboundBuffer();
+        if (buffer != null) {
+            buffer.setUserDefinedWritability(WRITABILITY, writable);
+        }
+    }
+
+    /**
+     * Tries the backlog again, unless the channel has closed since the retry was scheduled.
+     */
+    private void retry() {
+        retrying = false;
+        if (!closed) {
+            drain();
+        }
+    }
+
+    /**
+     * Handles the ring handshake, and passes every other message on.
+     */
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof Message)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        Message message = (Message) msg;
+        switch (message.getMessageType()) {
+            case ring -> attach(ctx, (String) message.getData());
+            case ringReady -> switchOver(ctx);
+            case ringSwitch -> startReading();
+            default -> {
+                ctx.fireChannelRead(msg);
+                return;
+            }
+        }
+        message.recycle();
+    }
+
+    /**
+     * Maps a ring the other side has offered, and tells it this side is ready to read it.
+     *
+     * @param ctx  the channel's context
+     * @param name the ring's path, as the other side sent it
+     */
+    private void attach(ChannelHandlerContext ctx, String name) {
+        if (inbound != null || reader != null || closed) {
+            return;
+        }
+
+        Path path;
+        try {
+            path = Paths.get(name).toAbsolutePath().normalize();
+        } catch (InvalidPathException e) {
+            path = null;
+        }
+        if (path == null || !DIRECTORY.equals(path.getParent()) || !NAME.matcher(path.getFileName().toString()).matches()
+                || !path.equals(expected.apply(ctx.channel()))) {
+            logger.actorError("Ignoring a ring offered at {}; it isn't from a registered contact on this machine.",
+                    name);
+            return;
+        }
+
+        try {
+            inbound = MappedRing.attach(path, ContactTable.of(ctx.channel()));
+        } catch (IOException e) {
+            // Nothing has been written to the ring yet, so the other side just stays on the socket.
+            logger.actorError("Couldn't map the ring at {}; staying on the socket.", path);
+            logger.trace(e);
+            return;
+        }
+
+        ctx.writeAndFlush(Message.pooled(null, Message.MessageType.ringReady, name));
+        logger.actorDebug("Mapped the ring at {}.", path);
+    }
+
+    /**
+     * Moves this side's writes onto its ring, once the other side has mapped it. The switch is marked on the
+     * socket, so the other side knows where the socket's frames end and the ring's begin.
+     *
+     * @param ctx the channel's context
+     */
+    private void switchOver(ChannelHandlerContext ctx) {
+        if (offered == null) {
+            return;
+        }
+
+        ctx.writeAndFlush(Message.pooled(null, Message.MessageType.ringSwitch, null));
+        outbound = offered;
+        offered = null;
+        logger.actorDebug("Writing to {} from now on.", outbound.path());
+    }
+
+    /**
+     * Starts reading the other side's ring, now that everything it sent over the socket has been read.
+     */
+    private void startReading() {
+        if (inbound == null || reader != null || closed) {
+            return;
+        }
+
+        MappedRing ring = inbound;
+        reader = new Thread(() -> read(ring), "playbill-ring-" + ring.path().getFileName());
+        reader.setDaemon(true);
+        reader.start();
+        logger.actorDebug("Reading from {} from now on.", ring.path());
+    }
+
+    /**
+     * The reader thread's loop: polls the ring, and hands frames to the pipeline in batches.
+     *
+     * @param ring the ring to read
+     */
+    private void read(MappedRing ring) {
+        int idle = 0;
+        while (!closed) {
+            Message message = ring.poll();
+            if (message == null) {
+                if (ring.isClosed()) {
+                    return;
+                }
+                idle = pause(idle);
+                continue;
+            }
+            idle = 0;
+
+            int polled = 0;
+            do {
+                arrived.add(message);
+            } while (++polled < BATCH && (message = ring.poll()) != null);
+
+            // Only wake the event loop if it isn't already delivering; a delivery in progress picks these up too.
+            if (delivering.compareAndSet(false, true)) {
+                ctx.executor().execute(this::deliver);
+            }
+        }
+    }
+
+    /**
+     * Hands arrived messages to the pipeline, a batch at a time, on the event loop. Each batch ends with a read
+     * complete, as a read off the socket would, so idle detection keeps working once the channel is on the ring.
+     */
+    private void deliver() {
+        Message received;
+        int delivered = 0;
+        while (delivered < BATCH && (received = arrived.poll()) != null) {
+            if (closed) {
+                received.recycle();
+                continue;
+            }
+            ctx.fireChannelRead(received);
+            delivered++;
+        }
+        if (delivered > 0) {
+            ctx.fireChannelReadComplete();
+        }
+
+        // Scheduling from the event loop itself doesn't wake anything, so the reader thread only pays for a wakeup
+        // when the loop has caught up with it.
+        if (!arrived.isEmpty()) {
+            ctx.executor().execute(this::deliver);
+            return;
+        }
+        delivering.set(false);
+        if (!arrived.isEmpty() && delivering.compareAndSet(false, true)) {
+            ctx.executor().execute(this::deliver);
+        }
+    }
+
+    /**
+     * Waits on an empty ring according to the wait strategy.
+     *
+     * @param idle how many polls in a row have come up empty
+     * @return the new count
+     */
+    private static int pause(int idle) {
+        if (WAIT == WaitStrategy.spin || idle < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK, 1000L << Math.min(idle - SPINS, 10)));
+        }
+        return idle + 1;
+    }
+
+    /**
+     * Fails the backlog, and closes this side's ring so the other side's reader stops.
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        closed = true;
+        Pending pending;
+        while ((pending = backlog.poll()) != null) {
+            ReferenceCountUtil.release(pending.frame);
+            pending.promise.tryFailure(new IOException("The channel closed before the frame made it into the ring."));
+        }
+        for (MappedRing ring : new MappedRing[] {offered, outbound}) {
+            if (ring != null) {
+                try {
+                    ring.close();
+                } catch (IOException e) {
+                    logger.trace(e);
+                }
+            }
+        }
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * A frame waiting for room in the ring, with the promise to complete once it's in.
+     */
+    private static class Pending {
+        /**
+         * The encoded frame.
+         */
+        final ByteBuf frame;
+        /**
+         * The write's promise.
+         */
+        final ChannelPromise promise;
+
+        /**
+         * Instantiates a new Pending frame.
+         *
+         * @param frame   the encoded frame
+         * @param promise the write's promise
+         */
+        Pending(ByteBuf frame, ChannelPromise promise) {
+            this.frame = frame;
+            this.promise = promise;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package jason.playbill.actor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A failure detector that gives up on a contact after a fixed stretch of silence.
+ */
+public class TimeoutDetector implements FailureDetector {
+    /**
+     * How long a contact may stay silent, in nanoseconds.
+     */
+    private final long timeout;
+    /**
+     * When anything last arrived, from {@link System#nanoTime()}.
+     */
+    private long last = System.nanoTime();
+
+    /**
+     * Instantiates a new Timeout detector.
+     *
+     * @param timeout how long a contact may stay silent, in milliseconds
+     */
+    public TimeoutDetector(long timeout) {
+        this.timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    @Override
+    public void heartbeat(long now) {
+        last = now;
+    }
+
+    @Override
+    public void received(long now) {
+        last = now;
+    }
+
+    @Override
+    public boolean isAvailable(long now) {
+        return now - last < timeout;
+    }
+}
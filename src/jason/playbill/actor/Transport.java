@@ -0,0 +1,345 @@
+package jason.playbill.actor;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.Future;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The event loop group and channel types an actor does all of its networking with.
+ *
+ * A single group is shared between the actor's client and server roles, and is sized from a thread
+ * budget rather than Netty's default of twice the core count. On Linux, the native epoll transport
+ * is used whenever it's available.
+ *
+ * The budget is read from the {@code playbill.threads} system property (default 1), and epoll can be
+ * turned off with {@code -Dplaybill.epoll=false}.
+ *
+ * A {@link #local(int) local} transport keeps every channel inside the JVM, so that several actors
+ * sharing one transport can run the whole cast in a single process.
+ *
+ * With epoll and {@code -Dplaybill.domain=true}, each actor also listens on a Unix domain socket, and
+ * actors on the same machine reach each other through it instead of through the loopback TCP stack.
+ * Actors on other hosts, or without a domain socket of their own, are still reached over TCP. The
+ * sockets live in the directory named by {@code playbill.domain.dir} (default java.io.tmpdir).
+ */
+public final class Transport {
+    /**
+     * The number of event loop threads an actor gets if nobody says otherwise.
+     */
+    public static final int DEFAULT_THREADS = 1;
+
+    /**
+     * The event loop group every channel runs on.
+     */
+    private final EventLoopGroup group;
+    /**
+     * The channel type outbound connections are made with.
+     */
+    private final Class<? extends Channel> clientChannel;
+    /**
+     * The channel type the actor listens with.
+     */
+    private final Class<? extends ServerChannel> serverChannel;
+    /**
+     * Whether channels stay inside the JVM instead of going through sockets.
+     */
+    private final boolean local;
+    /**
+     * Whether actors on the same machine are reached through Unix domain sockets.
+     */
+    private final boolean domain;
+    /**
+     * The directory the domain sockets live in.
+     */
+    private final Path domainDir = Paths.get(System.getProperty("playbill.domain.dir",
+            System.getProperty("java.io.tmpdir")));
+    /**
+     * Which hosts turned out to be this machine, so they only get looked up once.
+     */
+    private final ConcurrentHashMap<String, Boolean> localHosts = new ConcurrentHashMap<>();
+    /**
+     * The outbound buffer sizes at which a channel stops and starts being writable again, read from the
+     * {@code playbill.watermark.low} and {@code playbill.watermark.high} system properties, in bytes.
+     */
+    private final WriteBufferWaterMark waterMark = new WriteBufferWaterMark(
+            Integer.getInteger("playbill.watermark.low", 8 * 1024),
+            Integer.getInteger("playbill.watermark.high", 32 * 1024));
+
+    private Transport(EventLoopGroup group,
+                      Class<? extends Channel> clientChannel,
+                      Class<? extends ServerChannel> serverChannel,
+                      boolean local,
+                      boolean domain) {
+        this.group = group;
+        this.clientChannel = clientChannel;
+        this.serverChannel = serverChannel;
+        this.local = local;
+        this.domain = domain;
+    }
+
+    /**
+     * Creates a socket transport with the given number of event loop threads.
+     *
+     * @param threads the thread budget
+     * @param epoll   whether to use the native epoll transport if it's available
+     * @return the new transport
+     */
+    public static Transport create(int threads, boolean epoll) {
+        return create(threads, epoll, false);
+    }
+
+    /**
+     * Creates a socket transport with the given number of event loop threads, optionally reaching actors
+     * on the same machine through Unix domain sockets. Domain sockets need epoll, and are quietly left
+     * off without it.
+     *
+     * @param threads the thread budget
+     * @param epoll   whether to use the native epoll transport if it's available
+     * @param domain  whether to use domain sockets between actors on the same machine
+     * @return the new transport
+     */
+    public static Transport create(int threads, boolean epoll, boolean domain) {
+        checkThreads(threads);
+
+        if (epoll && Epoll.isAvailable()) {
+            return new Transport(new EpollEventLoopGroup(threads),
+                    EpollSocketChannel.class, EpollServerSocketChannel.class, false, domain);
+        }
+        return new Transport(new NioEventLoopGroup(threads),
+                NioSocketChannel.class, NioServerSocketChannel.class, false, false);
+    }
+
+    /**
+     * Creates an in-JVM transport. Only actors sharing the same JVM can reach each other through it.
+     *
+     * @param threads the thread budget
+     * @return the new transport
+     */
+    public static Transport local(int threads) {
+        checkThreads(threads);
+        return new Transport(new DefaultEventLoopGroup(threads),
+                LocalChannel.class, LocalServerChannel.class, true, false);
+    }
+
+    /**
+     * Creates a socket transport configured by the {@code playbill.threads}, {@code playbill.epoll} and
+     * {@code playbill.domain} system properties.
+     *
+     * @return the new transport
+     */
+    public static Transport fromProperties() {
+        return create(Integer.getInteger("playbill.threads", DEFAULT_THREADS),
+                Boolean.parseBoolean(System.getProperty("playbill.epoll", "true")),
+                Boolean.getBoolean("playbill.domain"));
+    }
+
+    private static void checkThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A transport needs at least one thread, not " + threads);
+        }
+    }
+
+    /**
+     * Gets the address an actor listens on.
+     *
+     * @param host the actor's host
+     * @param port the actor's port
+     * @return a socket address, or an in-JVM address named after the host and port for local transports
+     */
+    public SocketAddress address(String host, int port) {
+        if (local) {
+            return new LocalAddress("playbill-" + host + "-" + port);
+        }
+        return new InetSocketAddress(host, port);
+    }
+
+    /**
+     * Gets the address an actor's server binds to. Binding to the actor's own host, rather than to every
+     * interface, lets several actors share a port number on different loopback addresses.
+     *
+     * @param host the actor's host
+     * @param port the actor's port
+     * @return the address to bind to
+     */
+    public SocketAddress bindAddress(String host, int port) {
+        return address(host, port);
+    }
+
+    /**
+     * Gets the Unix domain socket an actor listens on alongside its TCP port.
+     *
+     * @param host the actor's host
+     * @param port the actor's port
+     * @return the domain socket address
+     */
+    public DomainSocketAddress domainAddress(String host, int port) {
+        return new DomainSocketAddress(domainPath(host, port).toFile());
+    }
+
+    private Path domainPath(String host, int port) {
+        return domainDir.resolve("playbill-" + host + "-" + port + ".sock");
+    }
+
+    /**
+     * Gets whether an actor can be reached through its domain socket: domain sockets are on, the actor is on
+     * this machine, and it's listening on one.
+     *
+     * @param host the actor's host
+     * @param port the actor's port
+     * @return true if the actor should be dialed through its domain socket
+     */
+    public boolean reachesByDomain(String host, int port) {
+        return domain && isLocalHost(host) && Files.exists(domainPath(host, port));
+    }
+
+    /**
+     * Gets whether a host is this machine.
+     *
+     * @param host the host
+     * @return true if it resolves to a loopback or local interface address
+     */
+    boolean isLocalHost(String host) {
+        return localHosts.computeIfAbsent(host, name -> {
+            try {
+                InetAddress address = InetAddress.getByName(name);
+                return address.isLoopbackAddress() || address.isAnyLocalAddress()
+                        || NetworkInterface.getByInetAddress(address) != null;
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Creates a bootstrap for connecting to another actor, with everything but the handler filled in.
+     * Actors on this machine are dialed through their domain socket when they have one.
+     *
+     * @param host the actor's host
+     * @param port the actor's port
+     * @return the bootstrap, ready to {@link Bootstrap#connect() connect}
+     */
+    public Bootstrap bootstrap(String host, int port) {
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark);
+        if (reachesByDomain(host, port)) {
+            return bootstrap.channel(EpollDomainSocketChannel.class)
+                    .remoteAddress(domainAddress(host, port));
+        }
+
+        bootstrap.channel(clientChannel).remoteAddress(address(host, port));
+        if (!local) {
+            bootstrap.option(ChannelOption.TCP_NODELAY, true);
+        }
+        return bootstrap;
+    }
+
+    /**
+     * Creates a bootstrap for listening for other actors, with everything but the child handler filled in.
+     *
+     * @return the server bootstrap
+     */
+    public ServerBootstrap serverBootstrap() {
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(group)
+                .channel(serverChannel)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark);
+        if (!local) {
+            bootstrap.option(ChannelOption.SO_BACKLOG, 1024);
+        }
+        return bootstrap;
+    }
+
+    /**
+     * Creates a bootstrap for listening for actors on this machine through a domain socket, with everything
+     * but the child handler filled in. Any socket file left behind by an earlier run at the same address is
+     * removed first, since binding would fail on it.
+     *
+     * @param host the actor's host
+     * @param port the actor's port
+     * @return the server bootstrap, ready to {@link ServerBootstrap#bind() bind}, or null if domain sockets are off
+     * @throws IOException if a stale socket file can't be removed
+     */
+    public ServerBootstrap domainServerBootstrap(String host, int port) throws IOException {
+        if (!domain) {
+            return null;
+        }
+        Files.deleteIfExists(domainPath(host, port));
+        return new ServerBootstrap()
+                .group(group)
+                .channel(EpollServerDomainSocketChannel.class)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark)
+                .localAddress(domainAddress(host, port));
+    }
+
+    /**
+     * Gets the event loop group shared by the client and server roles.
+     *
+     * @return the group
+     */
+    public EventLoopGroup group() {
+        return group;
+    }
+
+    /**
+     * Gets whether actors on the same machine are reached through Unix domain sockets.
+     *
+     * @return true if domain sockets are on
+     */
+    public boolean isDomain() {
+        return domain;
+    }
+
+    /**
+     * Gets whether channels stay inside the JVM instead of going through sockets.
+     *
+     * @return true for in-JVM transports
+     */
+    public boolean isLocal() {
+        return local;
+    }
+
+    /**
+     * Shuts the event loop group down.
+     *
+     * @return a future for when the group has finished shutting down
+     */
+    public Future<?> shutdown() {
+        return group.shutdownGracefully();
+    }
+
+    @Override
+    public String toString() {
+        return group.getClass().getSimpleName() + " with " + clientChannel.getSimpleName()
+                + (domain ? " and domain sockets" : "");
+    }
+}
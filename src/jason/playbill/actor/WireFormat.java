@@ -0,0 +1,52 @@
+package jason.playbill.actor;
+
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.serialization.ClassResolvers;
+import io.netty.handler.codec.serialization.ObjectDecoder;
+import io.netty.handler.codec.serialization.ObjectEncoder;
+
+/**
+ * The ways an actor can put {@link Message}s on the wire.
+ * Every actor in an ensemble has to agree on the same one.
+ *
+ * The format is picked with the {@code playbill.wire} system property, and defaults to {@link #binary}.
+ */
+public enum WireFormat {
+    /**
+     * The compact, length-prefixed {@link MessageCodec} format.
+     */
+    binary {
+        @Override
+        void install(ChannelPipeline pipeline) {
+            pipeline.addLast(new MessageDecoder(MessageCodec.MAX_FRAME_LENGTH));
+            pipeline.addLast(new MessageEncoder());
+        }
+    },
+    /**
+     * Plain Java serialization, kept as a fallback.
+     */
+    serialized {
+        @Override
+        void install(ChannelPipeline pipeline) {
+            pipeline.addLast(new ObjectDecoder(MessageCodec.MAX_FRAME_LENGTH,
+                    ClassResolvers.cacheDisabled(null)));
+            pipeline.addLast(new ObjectEncoder());
+        }
+    };
+
+    /**
+     * Adds this format's decoder and encoder to a channel pipeline.
+     *
+     * @param pipeline the pipeline to add to
+     */
+    abstract void install(ChannelPipeline pipeline);
+
+    /**
+     * Reads the wire format out of the {@code playbill.wire} system property.
+     *
+     * @return the configured format, or {@link #binary} if none is set
+     */
+    public static WireFormat fromProperty() {
+        return valueOf(System.getProperty("playbill.wire", binary.name()));
+    }
+}
@@ -0,0 +1,69 @@
+package jason.playbill.actor;
+
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Collects the writes of a broadcast into a single future.
+ *
+ * The writes go to channels on different event loops, so they can finish on different threads at once. Unlike
+ * Netty's PromiseCombiner, which expects every write to finish on one executor, this keeps count atomically.
+ * Writes are added from one thread; they may finish on any.
+ */
+final class WriteCombiner {
+    /**
+     * Completes once every write has, and {@link #finish()} has been called.
+     */
+    private final Promise<Void> done = ImmediateEventExecutor.INSTANCE.newPromise();
+    /**
+     * How many writes haven't finished yet, plus one until {@link #finish()} is called.
+     */
+    private final AtomicInteger pending = new AtomicInteger(1);
+    /**
+     * Why the first write to fail failed, if any has.
+     */
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * Adds a write to wait for.
+     *
+     * @param write the write's future
+     */
+    void add(Future<?> write) {
+        pending.incrementAndGet();
+        write.addListener(future -> finished(future));
+    }
+
+    /**
+     * Stops adding writes.
+     *
+     * @return a future that completes once every write has, or fails with the first write to fail
+     */
+    Future<Void> finish() {
+        finished(null);
+        return done;
+    }
+
+    /**
+     * Counts off a write, or the call to {@link #finish()}, and completes once nothing is left.
+     *
+     * @param write the write's future, or null for the call to finish
+     */
+    private void finished(Future<?> write) {
+        if (write != null && !write.isSuccess()) {
+            failure.compareAndSet(null, write.cause());
+        }
+        if (pending.decrementAndGet() == 0) {
+            Throwable cause = failure.get();
+            if (cause == null) {
+                done.trySuccess(null);
+            } else {
+                done.tryFailure(cause);
+            }
+        }
+    }
+}
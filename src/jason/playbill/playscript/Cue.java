@@ -0,0 +1,255 @@
+package jason.playbill.playscript;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * One cue of a {@link Playscript}, compiled so that an actor reading it never has to look anything up by name.
+ *
+ * Cast members are numbered by the script (see {@link Playscript#getPart(String)}), and each one's presence and
+ * view of who else is onstage are worked out once, when the script loads. The cue this one leads to is a direct
+ * reference.
+ *
+ * Since a script loads a cue at a time, a cue can be named, by the header or by a cue leading to it, before it
+ * has been read. It starts out as an empty shell, and is filled in exactly once, when its definition turns up;
+ * {@link #loaded()} says when. After that, it never changes.
+ */
+public final class Cue {
+    /**
+     * The scene the cue is in.
+     */
+    private final String scene;
+    /**
+     * The cue's name within its scene.
+     */
+    private final String name;
+    /**
+     * Completes once the cue has been read, or once the whole script has been read without finding it.
+     * Everything below is only set before this completes.
+     */
+    private final CompletableFuture<Cue> loaded = new CompletableFuture<>();
+    /**
+     * What kind of direction the cue is.
+     */
+    private Playscript.DirectionType type;
+    /**
+     * Each cast member's presence, by part. Anyone the cue doesn't mention is offstage.
+     */
+    private Playscript.Presence[] presences;
+    /**
+     * Everyone who had turned up in the script by the time this cue was read, by part.
+     */
+    private String[] cast;
+    /**
+     * Everyone else who isn't offstage, as each cast member sees it, by part. When the script was loaded for a
+     * single reader, only the reader's view is worked out ahead of time.
+     */
+    private List<List<String>> onstage;
+    /**
+     * Whoever is leading the cue, if anyone is.
+     */
+    private String leader;
+    /**
+     * The cue's lines, in order. Empty for directions that don't have any.
+     */
+    private Line[] lines;
+    /**
+     * The cue that follows this one, or null if the script ends here.
+     */
+    private Cue cuesTo;
+    /**
+     * Whether the cue's definition has been read.
+     */
+    private volatile boolean defined;
+
+    /**
+     * Instantiates a new Cue, as a shell to be defined once it's been read.
+     *
+     * @param scene the scene the cue is in
+     * @param name  the cue's name
+     */
+    Cue(String scene, String name) {
+        this.scene = scene;
+        this.name = name;
+    }
+
+    /**
+     * Fills in the cue's shell.
+     *
+     * @param type      what the cue does
+     * @param cast      everyone who has turned up in the script so far, by part
+     * @param presences each cast member's presence in this cue, by part
+     * @param lines     the cue's lines, in order
+     * @param reader    the part of the cast member the script is loaded for, or -1 if it's loaded whole
+     * @param cuesTo    the cue that follows this one, or null if the script ends here
+     * @return false if the cue had already been defined or settled, in which case nothing changes
+     */
+    boolean define(Playscript.DirectionType type, String[] cast, Playscript.Presence[] presences, Line[] lines,
+                   int reader, Cue cuesTo) {
+        if (loaded.isDone()) {
+            return false;
+        }
+
+        this.type = type;
+        this.cast = cast;
+        this.presences = presences;
+        this.lines = lines;
+        this.cuesTo = cuesTo;
+
+        String leader = null;
+        ArrayList<List<String>> onstage = new ArrayList<>(cast.length);
+        for (int part = 0; part < cast.length; part++) {
+            if (presences[part] == Playscript.Presence.leading) {
+                leader = cast[part];
+            }
+            onstage.add(reader == -1 || part == reader ? others(part) : null);
+        }
+        this.leader = leader;
+        this.onstage = Collections.unmodifiableList(onstage);
+
+        defined = true;
+        loaded.complete(this);
+        return true;
+    }
+
+    /**
+     * Gives up on the cue ever being defined, once the whole script has been read. Does nothing to a cue that
+     * already has been.
+     */
+    void settle() {
+        loaded.complete(this);
+    }
+
+    /**
+     * Gets a stage that completes once the cue can be used: as soon as it's been read, or once the whole script
+     * has been read without finding it, in which case it's still {@link #isDefined() undefined}.
+     *
+     * @return the stage
+     */
+    public CompletionStage<Cue> loaded() {
+        return loaded.minimalCompletionStage();
+    }
+
+    /**
+     * Checks whether the cue's definition has been read. The rest of a cue's getters are only meaningful once
+     * it has.
+     *
+     * @return whether the cue is defined
+     */
+    public boolean isDefined() {
+        return defined;
+    }
+
+    /**
+     * Works out who else isn't offstage, as one cast member sees it.
+     *
+     * @param part the cast member's part
+     * @return the other actors onstage, read-only
+     */
+    private List<String> others(int part) {
+        ArrayList<String> others = new ArrayList<>();
+        for (int other = 0; other < cast.length; other++) {
+            if (other != part && presences[other] != Playscript.Presence.offstage) {
+                others.add(cast[other]);
+            }
+        }
+        others.trimToSize();
+        return Collections.unmodifiableList(others);
+    }
+
+    /**
+     * Gets the scene the cue is in.
+     *
+     * @return the scene's name
+     */
+    public String getScene() {
+        return scene;
+    }
+
+    /**
+     * Gets the cue's name within its scene.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets what kind of direction the cue is.
+     *
+     * @return the direction type
+     */
+    public Playscript.DirectionType getType() {
+        return type;
+    }
+
+    /**
+     * Gets a cast member's presence in this cue.
+     *
+     * @param part the cast member's part, or -1 for someone with no part in the script
+     * @return the presence
+     */
+    public Playscript.Presence getPresence(int part) {
+        return part < 0 || part >= presences.length ? Playscript.Presence.offstage : presences[part];
+    }
+
+    /**
+     * Gets everyone else who isn't offstage for this cue.
+     *
+     * @param part the part of the cast member asking, or -1 for someone with no part in the script
+     * @return the other actors onstage, read-only
+     */
+    public List<String> getOnstage(int part) {
+        if (part < 0 || part >= presences.length) {
+            return Collections.emptyList();
+        }
+        List<String> view = onstage.get(part);
+        return view != null ? view : others(part);
+    }
+
+    /**
+     * Gets whoever is leading the cue.
+     *
+     * @return the leader's name, or null if nobody is
+     */
+    public String getLeader() {
+        return leader;
+    }
+
+    /**
+     * Gets how many lines the cue has.
+     *
+     * @return the line count
+     */
+    public int getLineCount() {
+        return lines.length;
+    }
+
+    /**
+     * Gets one of the cue's lines.
+     *
+     * @param number the line number, counting from 1
+     * @return the line, or null once the number runs past the last line
+     */
+    public Line getLine(int number) {
+        return number < 1 || number > lines.length ? null : lines[number - 1];
+    }
+
+    /**
+     * Gets the cue that follows this one.
+     *
+     * @return the next cue, or null if the script ends here
+     */
+    public Cue getCuesTo() {
+        return cuesTo;
+    }
+
+    @Override
+    public String toString() {
+        return scene + "/" + name;
+    }
+}
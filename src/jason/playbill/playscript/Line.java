@@ -0,0 +1,74 @@
+package jason.playbill.playscript;
+
+/**
+ * One line of a monologue or conversation, as compiled from a {@link Playscript}.
+ */
+public final class Line {
+    /**
+     * Where the line falls in its cue, counting from 1.
+     */
+    private final int number;
+    /**
+     * How long to wait before saying the line, in milliseconds.
+     */
+    private final int delay;
+    /**
+     * Who says the line, or null for a monologue, which only ever has the one speaker.
+     */
+    private final String from;
+    /**
+     * What's said, or null if the script was loaded for a reader who doesn't speak in this line's cue.
+     */
+    private final String text;
+
+    /**
+     * Instantiates a new Line.
+     *
+     * @param number where the line falls in its cue, counting from 1
+     * @param delay  how long to wait before saying the line, in milliseconds
+     * @param from   who says the line, or null for a monologue
+     * @param text   what's said, or null if the reader doesn't need it
+     */
+    Line(int number, int delay, String from, String text) {
+        this.number = number;
+        this.delay = delay;
+        this.from = from;
+        this.text = text;
+    }
+
+    /**
+     * Gets where the line falls in its cue.
+     *
+     * @return the line number, counting from 1
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * Gets how long to wait before saying the line.
+     *
+     * @return the delay, in milliseconds
+     */
+    public int getDelay() {
+        return delay;
+    }
+
+    /**
+     * Gets who says the line.
+     *
+     * @return the speaker's name, or null for a monologue
+     */
+    public String getFrom() {
+        return from;
+    }
+
+    /**
+     * Gets what's said.
+     *
+     * @return the text, or null if the script was loaded for a reader who doesn't speak in this line's cue
+     */
+    public String getText() {
+        return text;
+    }
+}
@@ -0,0 +1,85 @@
+package jason.playbill.playscript;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Points at one line of a {@link Playscript}, so that actors reading the same script can send each other the
+ * line's place instead of its text.
+ */
+public final class LineRef implements Serializable {
+    /**
+     * The scene the line is in.
+     */
+    private final String scene;
+    /**
+     * The cue the line is in.
+     */
+    private final String cue;
+    /**
+     * The line's number within its cue.
+     */
+    private final int line;
+
+    /**
+     * Instantiates a new Line ref.
+     *
+     * @param scene the scene the line is in
+     * @param cue   the cue the line is in
+     * @param line  the line's number within its cue
+     */
+    public LineRef(String scene, String cue, int line) {
+        this.scene = scene;
+        this.cue = cue;
+        this.line = line;
+    }
+
+    /**
+     * Gets the scene the line is in.
+     *
+     * @return the scene
+     */
+    public String getScene() {
+        return scene;
+    }
+
+    /**
+     * Gets the cue the line is in.
+     *
+     * @return the cue
+     */
+    public String getCue() {
+        return cue;
+    }
+
+    /**
+     * Gets the line's number within its cue.
+     *
+     * @return the line number
+     */
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LineRef)) {
+            return false;
+        }
+        LineRef other = (LineRef) o;
+        return line == other.line && scene.equals(other.scene) && cue.equals(other.cue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(scene, cue, line);
+    }
+
+    @Override
+    public String toString() {
+        return scene + "/" + cue + "#" + line;
+    }
+}
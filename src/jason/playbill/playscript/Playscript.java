@@ -1,12 +1,23 @@
 package jason.playbill.playscript;
 
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.stream.Stream;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class is a Java Object form of my playscript files, which are
@@ -17,41 +28,440 @@ import java.util.stream.Stream;
  * The Playscript class is responsible for containing the methods and
  *      functionality required by each script for their stage directions.
  *
+ * The JSON is only read once: loading a script compiles it into {@link Cue}s
+ *      and {@link Line}s, which is all an actor touches from then on.
+ *
+ * A script can be loaded for a single reader, in which case only the reader's
+ *      own part is kept whole. Cues the reader leads or responds in keep all
+ *      their lines. Every other cue keeps its presences, where it leads, and,
+ *      for conversations, who says each line so the reader can follow along,
+ *      but none of the text. What an actor holds on to then grows with its own
+ *      part rather than with the whole act.
+ *
+ * Scripts are read as a stream, a cue at a time, and are never held whole.
+ *      The header, and anything before it, is read before the constructor
+ *      returns. The rest is read on a loader thread of its own, and each cue
+ *      can be used as soon as it's read (see {@link Cue#loaded()}), so an
+ *      actor can start on the initial cue while later scenes are still
+ *      loading. A cue that's named before it's defined, like the one a cue
+ *      leads to, is handed out as an empty shell and filled in once its
+ *      definition turns up.
+ *
  *
  *      this class may or may not be obsolete? we'll see.
  */
 public class Playscript {
     //todo: label
     final String relativePath = "C:\\Users\\JasonEaton\\IdeaProjects\\alex\\src\\jason\\playbill\\playscript";
+    /**
+     * Stands in for the reader's part while loading a script for a reader who hasn't turned up in it yet.
+     */
+    private static final int NOT_YET = -2;
+
+    /**
+     * Each cast member's part, by name. Parts are numbered in the order cast members first turn up.
+     */
+    private final ConcurrentHashMap<String, Integer> parts = new ConcurrentHashMap<>();
+    /**
+     * Everyone who has turned up so far, by part. Only touched while loading, and replaced rather than changed,
+     * so each cue can keep the copy that was current when it was read.
+     */
+    private String[] cast = new String[0];
+    /**
+     * Every cue that has been named so far, defined or not, by scene and then by name.
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Cue>> scenes = new ConcurrentHashMap<>();
     //todo: label
-    JSONObject header;
-    //todo: label
-    JSONObject json;
+    private final Cue initial;
+    /**
+     * The name of the cast member the script is loaded for, or null if it's loaded whole.
+     */
+    private final String readerName;
+    /**
+     * The reader's part, -1 if the script is loaded whole, or {@link #NOT_YET}. Only touched while loading.
+     */
+    private int reader;
+    /**
+     * Completes once the whole script has been read, or fails if the rest of it couldn't be.
+     */
+    private final CompletableFuture<Playscript> loaded = new CompletableFuture<>();
+    /**
+     * A SHA-256 digest of the script's text, so actors can tell whether they're reading the same script.
+     * Line endings are normalized first, so a copy checked out on Windows still matches.
+     */
+    final String hash;
 
     //todo: label
     public Playscript(int episode, int act) throws IOException {
+        this(episode, act, null);
+    }
+
+    /**
+     * Loads a script for one reader, keeping only the text of the cues they speak in.
+     *
+     * @param episode the episode
+     * @param act     the act
+     * @param reader  the name of the cast member reading it, or null to keep everything
+     * @throws IOException if the script can't be read
+     */
+    public Playscript(int episode, int act, String reader) throws IOException {
         //fixme: should use script local to module
-        String path = "scripts\\ep" + episode + "\\" + "ep" + episode + "act" + act + ".json";
-        Stream<String> linesStream = Files.lines(Paths.get(relativePath, path));
-        StringBuilder contentBuilder = new StringBuilder();
-        linesStream.forEach(s -> contentBuilder.append(s).append("\n"));
+        // The folder the scripts are in can be moved with playbill.scripts, such as for generated acts.
+        Path file = Paths.get(System.getProperty("playbill.scripts", relativePath),
+                "scripts", "ep" + episode, "ep" + episode + "act" + act + ".json");
+        this.readerName = reader;
+        this.reader = reader == null ? -1 : NOT_YET;
+        hash = digest(file);
 
-        json = new JSONObject(contentBuilder.toString());
+        BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        JSONTokener tokener = new JSONTokener(in);
+        try {
+            if (tokener.nextClean() != '{') {
+                throw tokener.syntaxError("A playscript has to be a JSON object");
+            }
 
-        header = json.getJSONObject("header");
-        if (header.getInt("episode") != episode || header.getInt("act") != act){
-            throw new IllegalStateException("Playscript at " + path + " has invalid header.");
+            JSONObject header = null;
+            String key;
+            for (boolean first = true; header == null && (key = nextKey(tokener, first)) != null; first = false) {
+                if (key.equals("header")) {
+                    header = nextObject(tokener, "The header");
+                } else {
+                    readScene(tokener, key);
+                }
+            }
+
+            if (header == null) {
+                throw new IllegalStateException("Playscript at " + file + " has no header.");
+            }
+            if (header.getInt("episode") != episode || header.getInt("act") != act){
+                throw new IllegalStateException("Playscript at " + file + " has invalid header.");
+            }
+            JSONObject start = header.getJSONObject("initial");
+            initial = shell(start.getString("scene"), start.getString("cue"));
+        } catch (RuntimeException e) {
+            in.close();
+            throw e;
         }
+
+        Thread loader = new Thread(() -> readRest(tokener, in), "playscript-ep" + episode + "act" + act);
+        loader.setDaemon(true);
+        loader.start();
     }
 
-    //todo: label
-    public JSONObject getInitialCue() {
-        return header.getJSONObject("initial");
+    /**
+     * The loader thread's work: reads every scene after the header, then settles any cue that was named but
+     * never defined.
+     *
+     * @param tokener where the header left off
+     * @param in      the file, closed once it's been read
+     */
+    private void readRest(JSONTokener tokener, BufferedReader in) {
+        Throwable failure = null;
+        try (in) {
+            String key;
+            while ((key = nextKey(tokener, false)) != null) {
+                if (key.equals("header")) {
+                    throw tokener.syntaxError("A playscript can only have one header");
+                }
+                readScene(tokener, key);
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+
+        // Whatever is still a shell never got defined, so anyone headed there has reached the end, like at
+        // the curtain.
+        for (ConcurrentHashMap<String, Cue> cues : scenes.values()) {
+            for (Cue cue : cues.values()) {
+                cue.settle();
+            }
+        }
+
+        if (failure == null) {
+            loaded.complete(this);
+        } else {
+            loaded.completeExceptionally(failure);
+        }
     }
 
-    //todo: label
-    public JSONObject getDirection(String scene, String cue){
-        return json.getJSONObject(scene).getJSONObject(cue);
+    /**
+     * Reads one scene, defining each cue as soon as it's been read.
+     *
+     * @param tokener where the scene starts
+     * @param scene   the scene's name
+     */
+    private void readScene(JSONTokener tokener, String scene) {
+        if (tokener.nextClean() != '{') {
+            throw tokener.syntaxError("Scene " + scene + " has to be a JSON object");
+        }
+
+        String name;
+        for (boolean first = true; (name = nextKey(tokener, first)) != null; first = false) {
+            define(scene, name, nextObject(tokener, "Cue " + scene + "/" + name));
+        }
+    }
+
+    /**
+     * Reads the key of an object's next entry, and the colon after it.
+     *
+     * @param tokener where the entry starts
+     * @param first   whether it's the object's first entry, which has no comma before it
+     * @return the key, or null if the object ends instead
+     */
+    private static String nextKey(JSONTokener tokener, boolean first) {
+        char next = tokener.nextClean();
+        if (next == '}') {
+            return null;
+        }
+        if (!first) {
+            if (next != ',') {
+                throw tokener.syntaxError("Expected a ',' or '}'");
+            }
+            next = tokener.nextClean();
+        }
+        if (next != '"') {
+            throw tokener.syntaxError("Expected a key");
+        }
+
+        String key = tokener.nextString('"');
+        if (tokener.nextClean() != ':') {
+            throw tokener.syntaxError("Expected a ':' after " + key);
+        }
+        return key;
+    }
+
+    /**
+     * Reads the next value, which has to be an object.
+     *
+     * @param tokener the act being read
+     * @param what    what the object is, for the error
+     * @return the object
+     * @throws JSONException if the next value isn't an object
+     */
+    private static JSONObject nextObject(JSONTokener tokener, String what) {
+        Object value = tokener.nextValue();
+        if (!(value instanceof JSONObject)) {
+            throw tokener.syntaxError(what + " has to be a JSON object");
+        }
+        return (JSONObject) value;
+    }
+
+    /**
+     * Gets a cue, making an empty shell for it if it hasn't been named before.
+     *
+     * @param scene the scene's name
+     * @param name  the cue's name
+     * @return the cue
+     */
+    private Cue shell(String scene, String name) {
+        return scenes.computeIfAbsent(scene, ignored -> new ConcurrentHashMap<>())
+                .computeIfAbsent(name, ignored -> new Cue(scene, name));
+    }
+
+    /**
+     * Compiles a cue that has just been read, and fills in its shell.
+     *
+     * @param scene the scene's name
+     * @param name  the cue's name
+     * @param cue   the cue as it was read
+     */
+    private void define(String scene, String name, JSONObject cue) {
+        DirectionType type = cue.getEnum(DirectionType.class, "type");
+
+        JSONObject actors = cue.getJSONObject("actors");
+        for (String actor : actors.keySet()) {
+            if (parts.putIfAbsent(actor, cast.length) == null) {
+                cast = Arrays.copyOf(cast, cast.length + 1);
+                cast[cast.length - 1] = actor;
+                if (actor.equals(readerName)) {
+                    reader = cast.length - 1;
+                }
+            }
+        }
+
+        Presence[] presences = new Presence[cast.length];
+        Arrays.fill(presences, Presence.offstage);
+        for (String actor : actors.keySet()) {
+            presences[parts.get(actor)] = actors.getEnum(Presence.class, actor);
+        }
+
+        JSONObject cuesTo = cue.optJSONObject("cuesTo");
+        Cue next = cuesTo == null ? null : shell(cuesTo.getString("scene"), cuesTo.getString("cue"));
+        if (!shell(scene, name).define(type, cast, presences, compileLines(cue, type, presences), reader, next)) {
+            throw new JSONException("Cue " + scene + "/" + name + " is defined twice");
+        }
+    }
+
+    /**
+     * Compiles a cue's lines, as much of them as the reader needs.
+     *
+     * @param cue       the cue
+     * @param type      what the cue does
+     * @param presences each cast member's presence in the cue, by part
+     * @return the lines, in order
+     */
+    private Line[] compileLines(JSONObject cue, DirectionType type, Presence[] presences) {
+        boolean speaks = reader == -1
+                || (reader >= 0 && (presences[reader] == Presence.leading || presences[reader] == Presence.responding));
+        if (!speaks && type != DirectionType.conversation) {
+            return new Line[0];
+        }
+
+        ArrayList<Line> lines = new ArrayList<>();
+        JSONObject text = cue.optJSONObject("text");
+        for (int number = 1; text != null && text.has(String.valueOf(number)); number++) {
+            JSONObject line = text.getJSONObject(String.valueOf(number));
+            String from = type == DirectionType.conversation ? line.getString("from") : line.optString("from", null);
+            Integer speaker = from == null ? null : parts.get(from);
+            if (speaker != null) {
+                // Shares the cast's copy of the name instead of keeping one per line.
+                from = cast[speaker];
+            }
+            lines.add(new Line(number, line.getInt("delay"), from, speaks ? line.getString("text") : null));
+        }
+        return lines.toArray(new Line[0]);
+    }
+
+    /**
+     * Digests a script file a buffer at a time. Every line break becomes a single newline, and the last line
+     * gets one whether or not the file ends with one.
+     *
+     * @param file the script file
+     * @return the digest, as hex
+     * @throws IOException if the file can't be read
+     */
+    private static String digest(Path file) throws IOException {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM is supposed to have SHA-256.", e);
+        }
+
+        byte[] buffer = new byte[8192];
+        boolean afterReturn = false;
+        boolean midLine = false;
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                int kept = 0;
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n' && afterReturn) {
+                        afterReturn = false;
+                        continue;
+                    }
+                    afterReturn = b == '\r';
+                    midLine = b != '\n' && b != '\r';
+                    buffer[kept++] = afterReturn ? (byte) '\n' : b;
+                }
+                sha.update(buffer, 0, kept);
+            }
+        }
+        if (midLine) {
+            sha.update((byte) '\n');
+        }
+
+        byte[] digest = sha.digest();
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Gets the digest of the script's text.
+     *
+     * @return the hash, as hex
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Gets the text of a line.
+     *
+     * @param ref where the line is
+     * @return the line's text, or null if the script has no such line, it hasn't loaded yet, or it isn't in the
+     * reader's part
+     */
+    public String getLine(LineRef ref) {
+        Cue cue = getCue(ref.getScene(), ref.getCue());
+        Line line = cue == null || !cue.isDefined() ? null : cue.getLine(ref.getLine());
+        return line == null ? null : line.getText();
+    }
+
+    /**
+     * Gets the text of a line once the part of the script it's in has been read. A line can be sent by reference
+     * before the receiver has read that far.
+     *
+     * @param ref where the line is
+     * @return a stage that completes with the line's text, or with null if the script turns out not to have it
+     * or it isn't in the reader's part
+     */
+    public CompletionStage<String> getLineWhenLoaded(LineRef ref) {
+        Cue cue = getCue(ref.getScene(), ref.getCue());
+        CompletionStage<?> read = cue == null ? loaded : cue.loaded();
+        return read.handle((ignored, failure) -> getLine(ref));
+    }
+
+    /**
+     * Gets the cue the script starts at, which may still be loading.
+     *
+     * @return the initial cue
+     */
+    public Cue getInitialCue() {
+        return initial;
+    }
+
+    /**
+     * Finds a cue by name. Actors following the script don't need this, since every cue leads straight to
+     * the next one.
+     *
+     * @param scene the scene's name
+     * @param cue   the cue's name
+     * @return the cue, which may still be a shell, or null if nothing read so far names it
+     */
+    public Cue getCue(String scene, String cue) {
+        ConcurrentHashMap<String, Cue> cues = scenes.get(scene);
+        return cues == null ? null : cues.get(cue);
+    }
+
+    /**
+     * Gets a stage that completes once the whole script has been read.
+     *
+     * @return the stage, which fails if the rest of the script couldn't be read
+     */
+    public CompletionStage<Playscript> loaded() {
+        return loaded.minimalCompletionStage();
+    }
+
+    /**
+     * Checks whether a cast member keeps a line's text when they load the script for themselves, that is,
+     * whether they lead or respond in its cue. Anyone else needs the text sent to them.
+     *
+     * @param ref   where the line is
+     * @param actor the cast member's name
+     * @return whether their copy of the script has the line's text
+     */
+    public boolean isInPart(LineRef ref, String actor) {
+        Cue cue = getCue(ref.getScene(), ref.getCue());
+        if (cue == null || !cue.isDefined()) {
+            return false;
+        }
+        Presence presence = cue.getPresence(getPart(actor));
+        return presence == Presence.leading || presence == Presence.responding;
+    }
+
+    /**
+     * Gets a cast member's part, for looking up their presence and view of the stage in each {@link Cue}.
+     *
+     * @param actor the actor's name
+     * @return the part, or -1 if the actor hasn't turned up in the script, at least so far
+     */
+    public int getPart(String actor) {
+        Integer part = parts.get(actor);
+        return part == null ? -1 : part;
     }
 
     //todo: label